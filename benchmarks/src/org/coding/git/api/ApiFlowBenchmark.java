@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import org.coding.git.util.CodingNetAuthData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 完整的{@link CodingNetApiUtil}流程, 走真实的请求、分页和解码代码, 但响应由{@link CodingNetHttpFixtures}回放
+ * <p>
+ * 启动时先对{@link CodingNetMockServer}录制一遍, 之后关闭模拟服务, 只用录制文件. 设置{@code fixture}参数时直接回放
+ * 该文件(例如插件运行时用{@code -Dcoding.net.http.record}录下的真实数据), 其中应包含下面流程用到的地址.
+ *
+ * @author robin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiFlowBenchmark {
+    private static final String OWNER = "dev-user";
+    private static final String REPO = "project";
+
+    @Param({"500"})
+    public int items;
+
+    @Param({""})
+    public String fixture;
+
+    private String myHost;
+    private File myRecording;
+
+    @Setup
+    public void setUp() throws IOException {
+        File file;
+        if (fixture.isEmpty()) {
+            myRecording = File.createTempFile("coding-net-fixtures", ".jsonl");
+            file = myRecording;
+            try (CodingNetMockServer server = new CodingNetMockServer().setItems(items).start()) {
+                myHost = server.getHost();
+                CodingNetHttpFixtures.startRecording(file);
+                login();
+                userRepos();
+                issues();
+                pullRequestFiles();
+            } finally {
+                CodingNetHttpFixtures.stop();
+            }
+        } else {
+            file = new File(fixture);
+            //--回放时不区分host
+            myHost = "https://coding.net";
+        }
+        //--回放时不等待, 只测客户端自身的开销
+        CodingNetHttpFixtures.startReplay(file, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        CodingNetHttpFixtures.stop();
+        if (myRecording != null) {
+            //noinspection ResultOfMethodCallIgnored
+            myRecording.delete();
+        }
+    }
+
+    @Benchmark
+    public CodingNetUserDetailed login() throws IOException {
+        CodingNetAuthData auth = CodingNetAuthData.createBasicAuth(myHost, "dev-user", "password");
+        return CodingNetApiUtil.getCurrentUserDetailed(new CodingNetConnection(auth), auth);
+    }
+
+    @Benchmark
+    public List<CodingNetRepo> userRepos() throws IOException {
+        return CodingNetApiUtil.getUserRepos(new CodingNetConnection(CodingNetAuthData.createAnonymous(myHost)));
+    }
+
+    @Benchmark
+    public List<CodingNetIssue> issues() throws IOException {
+        return CodingNetApiUtil.getIssuesAssigned(new CodingNetConnection(CodingNetAuthData.createAnonymous(myHost)), OWNER, REPO, null, Integer.MAX_VALUE, false);
+    }
+
+    @Benchmark
+    public List<CodingNetFile> pullRequestFiles() throws IOException {
+        return CodingNetApiUtil.getPullRequestFiles(new CodingNetConnection(CodingNetAuthData.createAnonymous(myHost)), OWNER, REPO, 1);
+    }
+}
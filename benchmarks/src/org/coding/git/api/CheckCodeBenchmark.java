@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.google.gson.JsonElement;
+import org.coding.git.exceptions.CodingNetAuthenticationException;
+import org.coding.git.util.CodingNetAuthData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 业务码检查和当前用户响应的解码
+ * <ul>
+ * <li>{@link #checkSuccess()} code为0的快速路径</li>
+ * <li>{@link #checkError()} 错误码只抛出异常, 不读取消息</li>
+ * <li>{@link #checkErrorMessage()} 错误码并读取异常消息, 此时才解析msg</li>
+ * <li>{@link #currentUser()} 登录响应的完整处理: parseResponse -> checkCodingNetCode -> fromJson -> createDataFromRaw</li>
+ * </ul>
+ *
+ * @author robin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckCodeBenchmark {
+    private CodingNetAuthData myAuth;
+    private byte[] myUser;
+    private JsonElement mySuccess;
+    private JsonElement myError;
+    private int myErrorCode;
+
+    @Setup
+    public void setUp() throws IOException {
+        myAuth = CodingNetAuthData.createAnonymous("coding.example.com");
+        myUser = CodingNetFixtures.user();
+        mySuccess = CodingNetConnection.parseResponse(new ByteArrayInputStream(myUser));
+        myError = CodingNetConnection.parseResponse(new ByteArrayInputStream(CodingNetFixtures.error("user not login")));
+        myErrorCode = myError.getAsJsonObject().get("code").getAsInt();
+    }
+
+    @Benchmark
+    public void checkSuccess() throws IOException {
+        CodingNetConnection.checkCodingNetCode(myAuth, 0, mySuccess);
+    }
+
+    @Benchmark
+    public Object checkError() throws IOException {
+        try {
+            CodingNetConnection.checkCodingNetCode(myAuth, myErrorCode, myError);
+        } catch (CodingNetAuthenticationException e) {
+            return e;
+        }
+        throw new IllegalStateException("Expected CodingNetAuthenticationException");
+    }
+
+    @Benchmark
+    public String checkErrorMessage() throws IOException {
+        try {
+            CodingNetConnection.checkCodingNetCode(myAuth, myErrorCode, myError);
+        } catch (CodingNetAuthenticationException e) {
+            return e.getMessage();
+        }
+        throw new IllegalStateException("Expected CodingNetAuthenticationException");
+    }
+
+    @Benchmark
+    public CodingNetUserDetailed currentUser() throws IOException {
+        JsonElement response = CodingNetConnection.parseResponse(new ByteArrayInputStream(myUser));
+        CodingNetConnection.checkCodingNetCode(myAuth, response.getAsJsonObject().get("code").getAsInt(), response);
+        return CodingNetApiUtil.createDataFromRaw(CodingNetApiUtil.fromJson(response, CodingNetUserRaw.class), CodingNetUserDetailed.class);
+    }
+}
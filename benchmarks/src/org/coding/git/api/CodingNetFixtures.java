@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import org.coding.git.CodingNetOpenAPICodeMsg;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基准测试使用的脱敏响应数据, 位于resources/fixtures
+ * <p>
+ * 列表元素模板中的{@code ${n}}替换为序号, 按页大小拼成完整的OpenAPI分页响应.
+ *
+ * @author robin
+ */
+final class CodingNetFixtures {
+    private CodingNetFixtures() {
+    }
+
+    /**
+     * 列表接口的响应类型
+     */
+    enum Payload {
+        REPOS("repo.json", CodingNetRepoRaw.class, CodingNetRepo.class),
+        ISSUES("issue.json", CodingNetIssueRaw.class, CodingNetIssue.class),
+        COMMITS("commit.json", CodingNetCommitRaw.class, CodingNetCommitDetailed.class),
+        COMMENTS("comment.json", CodingNetCommitCommentRaw.class, CodingNetCommitComment.class);
+
+        @NotNull
+        final String myTemplate;
+        @NotNull
+        final Class<? extends ICodingNetDataConstructor> myRawClass;
+        @NotNull
+        final Class<?> myResultClass;
+
+        Payload(@NotNull String template, @NotNull Class<? extends ICodingNetDataConstructor> rawClass, @NotNull Class<?> resultClass) {
+            myTemplate = template;
+            myRawClass = rawClass;
+            myResultClass = resultClass;
+        }
+    }
+
+    /**
+     * @return 当前用户接口的完整响应
+     */
+    @NotNull
+    static byte[] user() {
+        return template("user.json").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param payload
+     * @param pageSize 列表元素个数
+     * @return {code, data: {list, page, pageSize, totalPage, totalRow}}
+     */
+    @NotNull
+    static byte[] page(@NotNull Payload payload, int pageSize) {
+        String template = template(payload.myTemplate);
+        StringBuilder builder = new StringBuilder(template.length() * pageSize + 128);
+        builder.append("{\"code\":0,\"data\":{\"list\":[");
+        for (int i = 0; i < pageSize; i++) {
+            if (i > 0) builder.append(',');
+            builder.append(item(template, i + 1));
+        }
+        builder.append("],\"page\":1,\"pageSize\":").append(pageSize)
+                .append(",\"totalPage\":1,\"totalRow\":").append(pageSize).append("}}");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param message
+     * @return 业务码为{@link CodingNetOpenAPICodeMsg#NO_LOGIN}的响应
+     */
+    @NotNull
+    static byte[] error(@NotNull String message) {
+        String json = "{\"code\":" + CodingNetOpenAPICodeMsg.NO_LOGIN.getCode() + ",\"msg\":{\"user_not_login\":\"" + message + "\"}}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param template 列表元素模板
+     * @param n        序号, 替换模板中的{@code ${n}}
+     * @return
+     */
+    @NotNull
+    static String item(@NotNull String template, long n) {
+        return template.replace("${n}", String.valueOf(n));
+    }
+
+    /**
+     * @param name resources/fixtures下的文件名
+     * @return
+     */
+    @NotNull
+    static String template(@NotNull String name) {
+        InputStream stream = CodingNetFixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (stream == null) {
+            throw new IllegalStateException("Fixture not found: " + name);
+        }
+        try (InputStream input = stream) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import org.coding.git.util.CodingNetAuthData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 插件网络操作的并发负载测试
+ * <p>
+ * 每个虚拟用户循环执行与{@link org.coding.git.util.CodingNetUtil#runTask}相同的步骤: 会话未验证时先登录,
+ * 然后新建{@link CodingNetConnection}执行一次任务并关闭. 多个用户可以共用同一账号, 与团队中多个窗口、多个任务共用账号的情况一致.
+ * 默认在进程内启动{@link CodingNetMockServer}, 也可以用host参数指向另外启动的模拟服务.
+ * <p>
+ * 结束时输出:
+ * <ul>
+ * <li>任务吞吐量与HTTP请求速率</li>
+ * <li>任务耗时的分位数</li>
+ * <li>新建连接数(模拟服务为HTTP, 即TCP握手次数)与每个连接平均承载的请求数</li>
+ * <li>线程数峰值, 堆内存峰值, GC次数与耗时</li>
+ * <li>{@link CodingNetMetrics}按接口统计的请求耗时</li>
+ * </ul>
+ * 参数形如{@code users=64 accounts=8 workload=mixed duration=30 warmup=5 items=500 latency=20 jitter=10},
+ * 对比时可加{@code linkOnly}(服务端不返回分页信息, 只能按Link逐页请求)或{@code coldSessions}(每个任务都重新登录),
+ * {@code serverErrors=0.05}让模拟服务按比例返回503, 观察重试与熔断.
+ *
+ * @author robin
+ */
+public class CodingNetLoadTest {
+    private static final String OWNER = "dev-user";
+    private static final String REPO = "project";
+    private static final int FAN_OUT = 10;
+
+    /**
+     * 一次任务, 对应插件中一个runTask调用
+     */
+    enum Workload {
+        REPOS {
+            @Override
+            void run(@NotNull CodingNetConnection connection, int iteration) throws IOException {
+                CodingNetApiUtil.getUserRepos(connection);
+            }
+        },
+        ISSUES {
+            @Override
+            void run(@NotNull CodingNetConnection connection, int iteration) throws IOException {
+                CodingNetApiUtil.getIssuesAssigned(connection, OWNER, REPO, null, Integer.MAX_VALUE, false);
+            }
+        },
+        COMMENTS {
+            @Override
+            void run(@NotNull CodingNetConnection connection, int iteration) throws IOException {
+                //--打开多个issue时依次读取评论
+                for (int i = 0; i < FAN_OUT; i++) {
+                    CodingNetApiUtil.getIssueComments(connection, OWNER, REPO, (iteration * FAN_OUT + i) % 100 + 1);
+                }
+            }
+        },
+        PR_FILES {
+            @Override
+            void run(@NotNull CodingNetConnection connection, int iteration) throws IOException {
+                long id = iteration % 20 + 1;
+                CodingNetApiUtil.getPullRequest(connection, OWNER, REPO, (int) id);
+                CodingNetApiUtil.getPullRequestFiles(connection, OWNER, REPO, id);
+            }
+        },
+        MIXED {
+            @Override
+            void run(@NotNull CodingNetConnection connection, int iteration) throws IOException {
+                Workload[] workloads = {REPOS, ISSUES, COMMENTS, PR_FILES};
+                workloads[iteration % workloads.length].run(connection, iteration / workloads.length);
+            }
+        };
+
+        abstract void run(@NotNull CodingNetConnection connection, int iteration) throws IOException;
+    }
+
+    private final Map<String, String> myOptions;
+    private final int myUsers;
+    private final int myAccounts;
+    private final Workload myWorkload;
+    private final boolean myColdSessions;
+
+    private final AtomicLong myTasks = new AtomicLong();
+    private final AtomicLong myFailures = new AtomicLong();
+    private final List<long[]> myLatencies = new ArrayList<long[]>();
+
+    private CodingNetLoadTest(@NotNull Map<String, String> options) {
+        myOptions = options;
+        myUsers = getInt("users", 32);
+        myAccounts = getInt("accounts", 4);
+        myWorkload = Workload.valueOf(get("workload", "mixed").toUpperCase(Locale.ROOT));
+        myColdSessions = options.containsKey("coldSessions");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<String, String>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            options.put(index == -1 ? arg : arg.substring(0, index), index == -1 ? "" : arg.substring(index + 1));
+        }
+        new CodingNetLoadTest(options).run();
+        //--共享的HttpClient与分页线程池不会自行退出
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        CodingNetMockServer server = null;
+        String host = myOptions.get("host");
+        if (host == null) {
+            server = new CodingNetMockServer()
+                    .setThreads(getInt("serverThreads", 64))
+                    .setItems(getInt("items", 500))
+                    .setMaxPageSize(getInt("maxPageSize", 100))
+                    .setPagingMetadata(!myOptions.containsKey("linkOnly"))
+                    .setLatency(getInt("latency", 20), getInt("jitter", 10))
+                    .setServerError(503, getDouble("serverErrors", 0))
+                    .start();
+            host = server.getHost();
+        }
+        try {
+            System.out.println("Load test: " + myWorkload + ", " + myUsers + " users on " + myAccounts + " accounts against " + host);
+
+            int warmup = getInt("warmup", 5);
+            if (warmup > 0) {
+                drive(host, warmup);
+            }
+
+            //--预热之后重新计数
+            myTasks.set(0);
+            myFailures.set(0);
+            myLatencies.clear();
+            CodingNetMetrics.reset();
+            if (server != null) server.resetCounters();
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+            int threadsBefore = threads.getThreadCount();
+            List<MemoryPoolMXBean> heapPools = getHeapPools();
+            for (MemoryPoolMXBean pool : heapPools) {
+                pool.resetPeakUsage();
+            }
+            long[] gcBefore = getGcTotals();
+            ThreadSampler sampler = new ThreadSampler();
+            sampler.start();
+
+            int duration = getInt("duration", 30);
+            long start = System.nanoTime();
+            drive(host, duration);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            sampler.interrupt();
+            sampler.join();
+            long[] gcAfter = getGcTotals();
+            report(seconds, server, threadsBefore, threads.getPeakThreadCount(), sampler.myPeak, getPeakHeap(heapPools),
+                    gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+        } finally {
+            if (server != null) server.close();
+        }
+    }
+
+    /**
+     * 所有虚拟用户同时开始, 循环执行任务直到时间结束
+     */
+    private void drive(@NotNull final String host, int seconds) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> users = new ArrayList<Thread>();
+        for (int i = 0; i < myUsers; i++) {
+            final int user = i;
+            Thread thread = new Thread(() -> {
+                CodingNetAuthData auth = CodingNetAuthData.createBasicAuth(host, "load-user-" + user % myAccounts, "password");
+                long[] latencies = new long[1024];
+                int count = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int iteration = 0; System.nanoTime() < deadline; iteration++) {
+                    long taskStart = System.nanoTime();
+                    try {
+                        runTask(auth, iteration);
+                        myTasks.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        if (myFailures.incrementAndGet() <= 5) {
+                            System.out.println("Task failed: " + e);
+                        }
+                        continue;
+                    }
+                    if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+                    latencies[count++] = System.nanoTime() - taskStart;
+                }
+                synchronized (myLatencies) {
+                    myLatencies.add(Arrays.copyOf(latencies, count));
+                }
+            }, "Load User " + i);
+            thread.start();
+            users.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : users) {
+            thread.join();
+        }
+    }
+
+    /**
+     * 与runTask相同: 复用已验证的会话, 否则先登录; 每个任务使用新的连接对象
+     */
+    private void runTask(@NotNull CodingNetAuthData auth, int iteration) throws IOException {
+        if (myColdSessions) {
+            CodingNetSessionCache.invalidate(auth);
+        }
+        CodingNetConnection connection = new CodingNetConnection(auth);
+        try {
+            if (!CodingNetSessionCache.isValidated(auth)) {
+                CodingNetApiUtil.getCurrentUserDetailed(connection, auth);
+                CodingNetSessionCache.markValidated(auth);
+            }
+            myWorkload.run(connection, iteration);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void report(double seconds,
+                        @Nullable CodingNetMockServer server,
+                        int threadsBefore,
+                        int peakThreads,
+                        int peakClientThreads,
+                        long peakHeap,
+                        long gcCount,
+                        long gcMillis) {
+        int total = 0;
+        for (long[] latencies : myLatencies) {
+            total += latencies.length;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (long[] latencies : myLatencies) {
+            System.arraycopy(latencies, 0, all, offset, latencies.length);
+            offset += latencies.length;
+        }
+        Arrays.sort(all);
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%nDuration:     %.1f s%n", seconds));
+        builder.append(String.format(Locale.ROOT, "Tasks:        %d ok, %d failed, %.1f tasks/s%n", myTasks.get(), myFailures.get(), myTasks.get() / seconds));
+        builder.append(String.format(Locale.ROOT, "Task latency: p50 %s, p90 %s, p99 %s, p99.9 %s, max %s%n",
+                millis(all, 0.5), millis(all, 0.9), millis(all, 0.99), millis(all, 0.999), millis(all, 1.0)));
+        if (server != null) {
+            long requests = server.getRequestCount();
+            int connections = server.getConnectionCount();
+            builder.append(String.format(Locale.ROOT, "Requests:     %d, %.1f req/s%n", requests, requests / seconds));
+            builder.append(String.format(Locale.ROOT, "Connections:  %d new, %.1f requests per connection%n",
+                    connections, connections == 0 ? 0.0 : (double) requests / connections));
+        }
+        builder.append(String.format(Locale.ROOT, "Threads:      %d peak in plugin code, %d peak in JVM (%d before, %d virtual users)%n",
+                peakClientThreads, peakThreads, threadsBefore, myUsers));
+        builder.append(String.format(Locale.ROOT, "Heap:         %.1f MB peak, %d GCs in %d ms%n", peakHeap / (1024.0 * 1024.0), gcCount, gcMillis));
+        builder.append('\n').append(CodingNetMetrics.format());
+        System.out.println(builder);
+    }
+
+    @NotNull
+    private static String millis(@NotNull long[] sorted, double quantile) {
+        if (sorted.length == 0) return "-";
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return String.format(Locale.ROOT, "%.1f ms", sorted[Math.max(index, 0)] / 1e6);
+    }
+
+    @NotNull
+    private static List<MemoryPoolMXBean> getHeapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    /**
+     * 各堆内存池峰值之和, 各池的峰值不一定同时出现, 是实际峰值的上限
+     */
+    private static long getPeakHeap(@NotNull List<MemoryPoolMXBean> pools) {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    @NotNull
+    private static long[] getGcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return new long[]{count, millis};
+    }
+
+    /**
+     * 定期统计插件代码使用的线程数, 不含虚拟用户、模拟服务和JVM自身的线程
+     */
+    private static final class ThreadSampler extends Thread {
+        private static final long INTERVAL_MILLIS = 100;
+
+        private volatile int myPeak;
+
+        private ThreadSampler() {
+            super("Load Thread Sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            while (!isInterrupted()) {
+                int count = 0;
+                for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+                    if (info != null && isClientThread(info.getThreadName())) count++;
+                }
+                myPeak = Math.max(myPeak, count);
+                try {
+                    Thread.sleep(INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private static boolean isClientThread(@NotNull String name) {
+            return !name.startsWith("Load ") && !name.startsWith("CodingNet Mock Server") && !name.startsWith("HTTP-Dispatcher")
+                    && !name.equals("main") && !name.equals("Reference Handler") && !name.equals("Finalizer")
+                    && !name.equals("Signal Dispatcher") && !name.equals("Common-Cleaner") && !name.equals("Attach Listener")
+                    && !name.equals("Notification Thread") && !name.startsWith("process reaper");
+        }
+    }
+
+    @NotNull
+    private String get(@NotNull String key, @NotNull String defaultValue) {
+        String value = myOptions.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private int getInt(@NotNull String key, int defaultValue) {
+        String value = myOptions.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private double getDouble(@NotNull String key, double defaultValue) {
+        String value = myOptions.get(key);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
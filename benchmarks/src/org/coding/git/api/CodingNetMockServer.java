@@ -0,0 +1,723 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.coding.git.CodingNetOpenAPICodeMsg;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地的Coding OpenAPI模拟服务, 用于离线的负载与延迟测试
+ * <p>
+ * 覆盖{@link CodingNetApiUtil}调用的接口: 用户、登录与两步认证、授权、项目、分支、组织、issue、评论、合并请求、提交和代码片段.
+ * 响应内容来自resources/fixtures下的模板, 可以配置:
+ * <ul>
+ * <li>列表接口的数据量与每页上限, 分页通过Link头给出下一页, 可选是否返回totalPage等分页信息</li>
+ * <li>每个请求的固定延迟和随机抖动</li>
+ * <li>按比例注入的业务错误码和HTTP 5xx</li>
+ * <li>固定时间窗口内的请求限额, 响应带X-RateLimit-*头, 超出时返回429和Retry-After</li>
+ * <li>登录时要求两步认证</li>
+ * </ul>
+ * 只监听本机地址, {@link #getHost()}可以直接作为{@link org.coding.git.util.CodingNetAuthData}的host.
+ *
+ * @author robin
+ */
+public class CodingNetMockServer implements Closeable {
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final String USER = "user.json";
+
+    private int myPort;
+    private int myThreads = 16;
+    private int myItems = 100;
+    private int myMaxPageSize = 100;
+    private boolean myPagingMetadata = true;
+    private long myLatencyMillis;
+    private long myJitterMillis;
+    private int myErrorCode;
+    private double myErrorRate;
+    private int myServerErrorStatus;
+    private double myServerErrorRate;
+    private int myRateLimit;
+    private long myRateWindowMillis;
+    //--以下两项由this保护
+    private long myRateWindowStart;
+    private int myRateUsed;
+    @Nullable
+    private String myTwoFactorCode;
+
+    private final List<Route> myRoutes = new ArrayList<Route>();
+    private final Map<String, String> myTemplates = new ConcurrentHashMap<String, String>();
+    //--登录后等待两步认证的会话
+    private final Set<String> myPendingSessions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong myRequests = new AtomicLong();
+    //--客户端端口, 用于统计新建的TCP连接数
+    private final Set<Integer> myClientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    @Nullable
+    private HttpServer myServer;
+    @Nullable
+    private ExecutorService myExecutor;
+
+    public CodingNetMockServer() {
+        //--登录与两步认证
+        route("POST", "/api/v2/account/login", this::login);
+        route("POST", "/api/check_two_factor_auth_code", this::checkTwoFactorCode);
+
+        //--用户与授权
+        route("GET", "/user", request -> template(USER));
+        route("HEAD", "/user", request -> new Response(200, null).header("X-OAuth-Scopes", "user, repo, gist"));
+        route("GET", "/authorizations", request -> list(request, "authorization.json"));
+        route("POST", "/authorizations", request -> single("authorization.json", 1));
+        route("PATCH", "/authorizations/(\\d+)", request -> single("authorization.json", request.number(1)));
+
+        //--项目
+        route("GET", "/api/user/projects", request -> list(request, "repo.json"));
+        route("GET", "/users/[^/]+/repos", request -> list(request, "repo.json"));
+        route("GET", "/user/subscriptions", request -> list(request, "repo.json"));
+        route("GET", "/user/orgs", request -> list(request, "org.json"));
+        route("GET", "/orgs/[^/]+/repos", request -> list(request, "repo.json"));
+        route("POST", "/user/repos", request -> single("repo.json", 1));
+        route("GET", "/repos/[^/]+/[^/]+", request -> single("repo.json", 1));
+        route("DELETE", "/repos/[^/]+/[^/]+", request -> success());
+        route("GET", "/repos/[^/]+/[^/]+/forks", request -> list(request, "repo.json"));
+        route("GET", "/repos/[^/]+/[^/]+/branches", request -> list(request, "branch.json"));
+
+        //--issue
+        route("GET", "/repos/[^/]+/[^/]+/issues", request -> list(request, "issue.json"));
+        route("GET", "/repos/[^/]+/[^/]+/issues/(\\d+)", request -> single("issue.json", request.number(1)));
+        route("PATCH", "/repos/[^/]+/[^/]+/issues/(\\d+)", request -> single("issue.json", request.number(1)));
+        route("GET", "/repos/[^/]+/[^/]+/issues/\\d+/comments", request -> list(request, "issue_comment.json"));
+        route("GET", "/search/issues", this::searchIssues);
+
+        //--提交与合并请求
+        route("GET", "/repos/[^/]+/[^/]+/commits/[0-9a-fA-F]+", request -> single("commit.json", 1));
+        route("GET", "/repos/[^/]+/[^/]+/commits/[0-9a-fA-F]+/comments", request -> list(request, "comment.json"));
+        route("GET", "/repos/[^/]+/[^/]+/pulls", request -> list(request, "pull.json"));
+        route("POST", "/repos/[^/]+/[^/]+/pulls", request -> single("pull.json", 1));
+        route("GET", "/repos/[^/]+/[^/]+/pulls/(\\d+)", request -> single("pull.json", request.number(1)));
+        route("GET", "/repos/[^/]+/[^/]+/pulls/\\d+/comments", request -> list(request, "comment.json"));
+        route("GET", "/repos/[^/]+/[^/]+/pulls/\\d+/commits", request -> list(request, "commit.json"));
+        route("GET", "/repos/[^/]+/[^/]+/pulls/\\d+/files", request -> list(request, "file.json"));
+
+        //--代码片段
+        route("POST", "/gists", request -> single("gist.json", 1));
+        route("GET", "/gists/[^/]*?(\\d+)", request -> single("gist.json", request.number(1)));
+        route("DELETE", "/gists/[^/]+", request -> success());
+    }
+
+    /**
+     * @param port 0表示随机端口
+     */
+    @NotNull
+    public CodingNetMockServer setPort(int port) {
+        myPort = port;
+        return this;
+    }
+
+    /**
+     * @param threads 处理请求的线程数
+     */
+    @NotNull
+    public CodingNetMockServer setThreads(int threads) {
+        myThreads = threads;
+        return this;
+    }
+
+    /**
+     * @param items 每个列表接口的数据总条数
+     */
+    @NotNull
+    public CodingNetMockServer setItems(int items) {
+        myItems = items;
+        return this;
+    }
+
+    /**
+     * @param maxPageSize 每页条数上限, 请求的pageSize更大时按上限分页
+     */
+    @NotNull
+    public CodingNetMockServer setMaxPageSize(int maxPageSize) {
+        myMaxPageSize = maxPageSize;
+        return this;
+    }
+
+    /**
+     * @param pagingMetadata false时列表响应不带page/totalPage/totalRow, 客户端只能按Link逐页请求
+     */
+    @NotNull
+    public CodingNetMockServer setPagingMetadata(boolean pagingMetadata) {
+        myPagingMetadata = pagingMetadata;
+        return this;
+    }
+
+    /**
+     * @param latencyMillis 每个请求的固定延迟
+     * @param jitterMillis  在固定延迟上增加的随机延迟上限
+     */
+    @NotNull
+    public CodingNetMockServer setLatency(long latencyMillis, long jitterMillis) {
+        myLatencyMillis = latencyMillis;
+        myJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * @param code 业务错误码, 见{@link CodingNetOpenAPICodeMsg}
+     * @param rate 登录以外的请求返回该错误码的比例, 0到1
+     */
+    @NotNull
+    public CodingNetMockServer setBusinessError(int code, double rate) {
+        myErrorCode = code;
+        myErrorRate = rate;
+        return this;
+    }
+
+    /**
+     * @param status HTTP状态码, 如503
+     * @param rate   返回该状态码的请求比例, 0到1, 登录请求同样生效
+     */
+    @NotNull
+    public CodingNetMockServer setServerError(int status, double rate) {
+        myServerErrorStatus = status;
+        myServerErrorRate = rate;
+        return this;
+    }
+
+    /**
+     * @param limit        每个时间窗口内允许的请求数, 0表示不限制; 所有客户端共用
+     * @param windowMillis 时间窗口长度
+     */
+    @NotNull
+    public CodingNetMockServer setRateLimit(int limit, long windowMillis) {
+        myRateLimit = limit;
+        myRateWindowMillis = windowMillis;
+        return this;
+    }
+
+    /**
+     * @param code 登录时要求的两步认证码, null表示不需要两步认证
+     */
+    @NotNull
+    public CodingNetMockServer setTwoFactorCode(@Nullable String code) {
+        myTwoFactorCode = code;
+        return this;
+    }
+
+    @NotNull
+    public CodingNetMockServer start() throws IOException {
+        if (myServer != null) throw new IllegalStateException("Already started");
+
+        AtomicInteger threadIds = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(myThreads, runnable -> {
+            Thread thread = new Thread(runnable, "CodingNet Mock Server " + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), myPort), 128);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+
+        myExecutor = executor;
+        myServer = server;
+        return this;
+    }
+
+    /**
+     * @return 如http://127.0.0.1:53219
+     */
+    @NotNull
+    public String getHost() {
+        HttpServer server = myServer;
+        if (server == null) throw new IllegalStateException("Not started");
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    /**
+     * @return 启动或上次{@link #resetCounters()}以来收到的请求数
+     */
+    public long getRequestCount() {
+        return myRequests.get();
+    }
+
+    /**
+     * 按客户端端口区分连接, 同一端口在统计期间被系统重用时只计一次, 短时间的测试中可以忽略
+     *
+     * @return 启动或上次{@link #resetCounters()}以来客户端新建的连接数
+     */
+    public int getConnectionCount() {
+        return myClientPorts.size();
+    }
+
+    public void resetCounters() {
+        myRequests.set(0);
+        myClientPorts.clear();
+    }
+
+    @Override
+    public void close() {
+        HttpServer server = myServer;
+        if (server != null) server.stop(0);
+        ExecutorService executor = myExecutor;
+        if (executor != null) executor.shutdownNow();
+        myServer = null;
+        myExecutor = null;
+    }
+
+    private void route(@NotNull String method, @NotNull String path, @NotNull Handler handler) {
+        myRoutes.add(new Route(method, Pattern.compile(path), handler));
+    }
+
+    private void handle(@NotNull HttpExchange exchange) throws IOException {
+        myRequests.incrementAndGet();
+        myClientPorts.add(exchange.getRemoteAddress().getPort());
+        try {
+            Response response;
+            try {
+                drain(exchange.getRequestBody());
+                delay();
+                response = myRateLimit > 0 ? limitRate(exchange) : dispatch(exchange);
+            } catch (InterruptedException e) {
+                //--服务关闭
+                return;
+            } catch (Exception e) {
+                response = new Response(500, "{\"message\":\"" + e.getClass().getSimpleName() + "\"}");
+            }
+            send(exchange, response);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @NotNull
+    private Response limitRate(@NotNull HttpExchange exchange) throws IOException {
+        long now = System.currentTimeMillis();
+        boolean allowed;
+        int remaining;
+        long reset;
+        synchronized (this) {
+            if (now - myRateWindowStart >= myRateWindowMillis) {
+                myRateWindowStart = now;
+                myRateUsed = 0;
+            }
+            allowed = myRateUsed < myRateLimit;
+            if (allowed) myRateUsed++;
+            remaining = myRateLimit - myRateUsed;
+            reset = myRateWindowStart + myRateWindowMillis;
+        }
+        Response response = allowed
+                ? dispatch(exchange)
+                : new Response(429, "{\"message\":\"API rate limit exceeded\"}")
+                .header("Retry-After", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(reset - now + 999)));
+        return response.header("X-RateLimit-Limit", String.valueOf(myRateLimit))
+                .header("X-RateLimit-Remaining", String.valueOf(remaining))
+                .header("X-RateLimit-Reset", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(reset + 999)));
+    }
+
+    @NotNull
+    private Response dispatch(@NotNull HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath();
+        boolean pathMatched = false;
+        for (Route route : myRoutes) {
+            Matcher matcher = route.myPath.matcher(path);
+            if (!matcher.matches()) continue;
+            pathMatched = true;
+            if (!route.myMethod.equals(method)) continue;
+
+            if (myServerErrorStatus != 0 && ThreadLocalRandom.current().nextDouble() < myServerErrorRate) {
+                return new Response(myServerErrorStatus, "{\"message\":\"mock server error\"}");
+            }
+            Request request = new Request(exchange, matcher);
+            if (!path.startsWith("/api/v2/account/login") && !path.startsWith("/api/check_two_factor_auth_code")
+                    && myErrorCode != 0 && ThreadLocalRandom.current().nextDouble() < myErrorRate) {
+                return error(myErrorCode);
+            }
+            return route.myHandler.handle(request);
+        }
+        return pathMatched ? new Response(405, "{\"message\":\"Method Not Allowed\"}") : new Response(404, "{\"message\":\"Not Found\"}");
+    }
+
+    @NotNull
+    private Response login(@NotNull Request request) {
+        String sid = UUID.randomUUID().toString();
+        Response response;
+        if (myTwoFactorCode != null) {
+            myPendingSessions.add(sid);
+            response = error(CodingNetOpenAPICodeMsg.NEED_TWO_FACTOR_AUTH_CODE.getCode());
+        } else {
+            response = template(USER);
+        }
+        return response.header("Set-Cookie", "sid=" + sid + "; Path=/; HttpOnly");
+    }
+
+    @NotNull
+    private Response checkTwoFactorCode(@NotNull Request request) {
+        String sid = request.getSessionId();
+        if (sid == null || !myPendingSessions.contains(sid)) {
+            return error(CodingNetOpenAPICodeMsg.NO_LOGIN.getCode());
+        }
+        if (!request.param("code", "").equals(myTwoFactorCode)) {
+            return error(CodingNetOpenAPICodeMsg.AUTH_ERROR.getCode());
+        }
+        myPendingSessions.remove(sid);
+        return template(USER).header("Set-Cookie", "sid=" + sid + "; Path=/; HttpOnly");
+    }
+
+    @NotNull
+    private Response searchIssues(@NotNull Request request) {
+        String template = getTemplate("issue.json");
+        int count = Math.min(myItems, myMaxPageSize);
+        StringBuilder builder = new StringBuilder("{\"code\":0,\"total_count\":").append(count).append(",\"items\":[");
+        for (int i = 1; i <= count; i++) {
+            if (i > 1) builder.append(',');
+            builder.append(CodingNetFixtures.item(template, i));
+        }
+        return new Response(200, builder.append("]}").toString());
+    }
+
+    /**
+     * 按page与pageSize(或per_page)参数返回一页, 还有下一页时给出Link头
+     */
+    @NotNull
+    private Response list(@NotNull Request request, @NotNull String name) {
+        String template = getTemplate(name);
+        int pageSize = request.intParam("pageSize", request.intParam("per_page", DEFAULT_PAGE_SIZE));
+        pageSize = Math.max(1, Math.min(pageSize, myMaxPageSize));
+        int totalPage = Math.max(1, (myItems + pageSize - 1) / pageSize);
+        int page = Math.max(1, request.intParam("page", 1));
+
+        StringBuilder builder = new StringBuilder(template.length() * pageSize + 128).append("{\"code\":0,\"data\":{\"list\":[");
+        int from = (page - 1) * pageSize + 1;
+        int to = Math.min(page * pageSize, myItems);
+        for (int i = from; i <= to; i++) {
+            if (i > from) builder.append(',');
+            builder.append(CodingNetFixtures.item(template, i));
+        }
+        builder.append(']');
+        if (myPagingMetadata) {
+            builder.append(",\"page\":").append(page).append(",\"pageSize\":").append(pageSize)
+                    .append(",\"totalPage\":").append(totalPage).append(",\"totalRow\":").append(myItems);
+        }
+        builder.append("}}");
+
+        Response response = new Response(200, builder.toString());
+        if (page < totalPage) {
+            response.header("Link", "<" + getHost() + request.withParam("page", String.valueOf(page + 1)) + ">; rel=\"next\"");
+        }
+        return response;
+    }
+
+    /**
+     * 单个对象的接口由客户端直接从响应顶层读取字段, 业务码与对象字段并列
+     */
+    @NotNull
+    private Response single(@NotNull String name, long n) {
+        String item = CodingNetFixtures.item(getTemplate(name), n).trim();
+        return new Response(200, "{\"code\":0," + item.substring(1));
+    }
+
+    @NotNull
+    private Response template(@NotNull String name) {
+        return new Response(200, getTemplate(name));
+    }
+
+    @NotNull
+    private static Response success() {
+        return new Response(200, "{\"code\":0}");
+    }
+
+    /**
+     * msg的键与{@link CodingNetOpenAPICodeMsg}中各消息类读取的字段一致
+     */
+    @NotNull
+    private static Response error(int code) {
+        String key;
+        CodingNetOpenAPICodeMsg codeMsg = CodingNetOpenAPICodeMsg.forCode(code);
+        if (codeMsg == null) {
+            key = "error";
+        } else {
+            switch (codeMsg) {
+                case USER_PASSWORD_NO_CORRECT:
+                    key = "password";
+                    break;
+                case NEED_VERIFICATION_CODE:
+                    key = "j_captcha";
+                    break;
+                case NO_LOGIN:
+                    key = "user_not_login";
+                    break;
+                case NO_EXIST_USER:
+                case USER_LOCKED:
+                    key = "account";
+                    break;
+                case LOGIN_EXPIRED:
+                    key = "user_login_status_expired";
+                    break;
+                case AUTH_ERROR:
+                    key = "auth_error";
+                    break;
+                default:
+                    key = "two_factor_auth_code";
+            }
+        }
+        return new Response(200, "{\"code\":" + code + ",\"msg\":{\"" + key + "\":\"mock error " + code + "\"}}");
+    }
+
+    @NotNull
+    private String getTemplate(@NotNull String name) {
+        return myTemplates.computeIfAbsent(name, CodingNetFixtures::template);
+    }
+
+    private void delay() throws InterruptedException {
+        long millis = myLatencyMillis;
+        if (myJitterMillis > 0) millis += ThreadLocalRandom.current().nextLong(myJitterMillis + 1);
+        if (millis > 0) TimeUnit.MILLISECONDS.sleep(millis);
+    }
+
+    private static void drain(@NotNull InputStream input) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (input.read(buffer) != -1) {
+            //--读完请求体, 连接才能复用
+        }
+    }
+
+    private static void send(@NotNull HttpExchange exchange, @NotNull Response response) throws IOException {
+        for (Map.Entry<String, String> header : response.myHeaders.entrySet()) {
+            exchange.getResponseHeaders().add(header.getKey(), header.getValue());
+        }
+        byte[] body = response.myBody == null || "HEAD".equals(exchange.getRequestMethod())
+                ? new byte[0] : response.myBody.getBytes(StandardCharsets.UTF_8);
+        if (body.length > 0) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        }
+        exchange.sendResponseHeaders(response.myStatus, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            OutputStream output = exchange.getResponseBody();
+            output.write(body);
+            output.flush();
+        }
+    }
+
+    /**
+     * 独立运行, 参数形如{@code port=8080 items=1000 latency=50 jitter=20 error=1000:0.01 serverError=503:0.05 rateLimit=5000:3600000 twoFactor=123456}
+     */
+    public static void main(String[] args) throws IOException {
+        CodingNetMockServer server = new CodingNetMockServer();
+        long latency = 0;
+        long jitter = 0;
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            String key = index == -1 ? arg : arg.substring(0, index);
+            String value = index == -1 ? "" : arg.substring(index + 1);
+            switch (key) {
+                case "port":
+                    server.setPort(Integer.parseInt(value));
+                    break;
+                case "threads":
+                    server.setThreads(Integer.parseInt(value));
+                    break;
+                case "items":
+                    server.setItems(Integer.parseInt(value));
+                    break;
+                case "maxPageSize":
+                    server.setMaxPageSize(Integer.parseInt(value));
+                    break;
+                case "linkOnly":
+                    server.setPagingMetadata(false);
+                    break;
+                case "latency":
+                    latency = Long.parseLong(value);
+                    break;
+                case "jitter":
+                    jitter = Long.parseLong(value);
+                    break;
+                case "error":
+                    String[] error = value.split(":");
+                    server.setBusinessError(Integer.parseInt(error[0]), error.length > 1 ? Double.parseDouble(error[1]) : 1.0);
+                    break;
+                case "serverError":
+                    String[] serverError = value.split(":");
+                    server.setServerError(Integer.parseInt(serverError[0]), serverError.length > 1 ? Double.parseDouble(serverError[1]) : 1.0);
+                    break;
+                case "rateLimit":
+                    String[] rateLimit = value.split(":");
+                    server.setRateLimit(Integer.parseInt(rateLimit[0]), rateLimit.length > 1 ? Long.parseLong(rateLimit[1]) : 60000);
+                    break;
+                case "twoFactor":
+                    server.setTwoFactorCode(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        server.setLatency(latency, jitter).start();
+        System.out.println("Coding OpenAPI mock server listening on " + server.getHost());
+    }
+
+    private interface Handler {
+        @NotNull
+        Response handle(@NotNull Request request) throws IOException;
+    }
+
+    private static final class Route {
+        @NotNull
+        private final String myMethod;
+        @NotNull
+        private final Pattern myPath;
+        @NotNull
+        private final Handler myHandler;
+
+        private Route(@NotNull String method, @NotNull Pattern path, @NotNull Handler handler) {
+            myMethod = method;
+            myPath = path;
+            myHandler = handler;
+        }
+    }
+
+    private static final class Request {
+        @NotNull
+        private final HttpExchange myExchange;
+        @NotNull
+        private final Matcher myMatcher;
+        @NotNull
+        private final Map<String, String> myParams = new LinkedHashMap<String, String>();
+
+        private Request(@NotNull HttpExchange exchange, @NotNull Matcher matcher) throws UnsupportedEncodingException {
+            myExchange = exchange;
+            myMatcher = matcher;
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String pair : query.split("&")) {
+                    if (pair.isEmpty()) continue;
+                    int index = pair.indexOf('=');
+                    String key = URLDecoder.decode(index == -1 ? pair : pair.substring(0, index), "UTF-8");
+                    String value = index == -1 ? "" : URLDecoder.decode(pair.substring(index + 1), "UTF-8");
+                    myParams.put(key, value);
+                }
+            }
+        }
+
+        private long number(int group) {
+            return Long.parseLong(myMatcher.group(group));
+        }
+
+        @NotNull
+        private String param(@NotNull String name, @NotNull String defaultValue) {
+            String value = myParams.get(name);
+            return value == null ? defaultValue : value;
+        }
+
+        private int intParam(@NotNull String name, int defaultValue) {
+            String value = myParams.get(name);
+            if (value == null) return defaultValue;
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        /**
+         * @return 请求路径和查询参数, 其中name参数替换为value
+         */
+        @NotNull
+        private String withParam(@NotNull String name, @NotNull String value) {
+            String raw = myExchange.getRequestURI().getRawQuery();
+            StringBuilder builder = new StringBuilder(myExchange.getRequestURI().getRawPath()).append('?');
+            boolean replaced = false;
+            if (raw != null) {
+                for (String pair : raw.split("&")) {
+                    if (pair.isEmpty()) continue;
+                    if (pair.equals(name) || pair.startsWith(name + "=")) {
+                        if (replaced) continue;
+                        pair = name + "=" + value;
+                        replaced = true;
+                    }
+                    builder.append(pair).append('&');
+                }
+            }
+            if (!replaced) builder.append(name).append('=').append(value).append('&');
+            builder.setLength(builder.length() - 1);
+            return builder.toString();
+        }
+
+        /**
+         * 会话id来自sid cookie, 或客户端发送的X-GitHub-OTP头
+         */
+        @Nullable
+        private String getSessionId() {
+            List<String> cookies = myExchange.getRequestHeaders().get("Cookie");
+            if (cookies != null) {
+                for (String header : cookies) {
+                    for (String cookie : header.split(";")) {
+                        cookie = cookie.trim();
+                        if (cookie.startsWith("sid=")) return cookie.substring(4);
+                    }
+                }
+            }
+            return myExchange.getRequestHeaders().getFirst("X-GitHub-OTP");
+        }
+    }
+
+    private static final class Response {
+        private final int myStatus;
+        @Nullable
+        private final String myBody;
+        @NotNull
+        private final Map<String, String> myHeaders = new LinkedHashMap<String, String>();
+
+        private Response(int status, @Nullable String body) {
+            myStatus = status;
+            myBody = body;
+        }
+
+        @NotNull
+        private Response header(@NotNull String name, @NotNull String value) {
+            myHeaders.put(name, value);
+            return this;
+        }
+    }
+}
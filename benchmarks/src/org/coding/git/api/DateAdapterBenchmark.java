@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多线程解析时间字段: {@link CodingNetDateAdapter}与原先initGson中的setDateFormat(内部对同一个DateFormat加锁)对比
+ *
+ * @author robin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class DateAdapterBenchmark {
+    private static final String DATE = "\"2018-06-03T10:12:25Z\"";
+
+    private TypeAdapter<Date> myAdapter;
+    private TypeAdapter<Date> myDateFormatAdapter;
+
+    @Setup
+    public void setUp() {
+        myAdapter = new CodingNetDateAdapter();
+        Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'").create();
+        myDateFormatAdapter = gson.getAdapter(Date.class);
+    }
+
+    @Benchmark
+    public Date dateAdapter() throws IOException {
+        return myAdapter.fromJson(DATE);
+    }
+
+    @Benchmark
+    public Date dateFormat() throws IOException {
+        return myDateFormatAdapter.fromJson(DATE);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应解码的各个阶段, 按页大小和响应类型组合
+ * <ul>
+ * <li>{@link #parseResponse()} 只构建JsonElement树</li>
+ * <li>{@link #treeDecode()} 旧的完整路径: 树 -> fromJson(*Raw) -> createDataFromRaw</li>
+ * <li>{@link #treeDecodeReflective()} 同上, 但*Raw使用Gson反射绑定, 作为手写解析器的对照</li>
+ * <li>{@link #streamDecode()} 分页请求实际使用的流式解码</li>
+ * </ul>
+ *
+ * @author robin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseDecodeBenchmark {
+    @Param({"1", "50", "500"})
+    public int pageSize;
+
+    //--JMH 1.21生成的代码不支持嵌套enum参数, 按名称转换
+    @Param({"REPOS", "ISSUES", "COMMITS", "COMMENTS"})
+    public String payloadName;
+
+    private CodingNetFixtures.Payload myPayload;
+    private byte[] myContent;
+    private Gson myReflectiveGson;
+
+    @Setup
+    public void setUp() {
+        myPayload = CodingNetFixtures.Payload.valueOf(payloadName);
+        myContent = CodingNetFixtures.page(myPayload, pageSize);
+        //--与CodingNetApiUtil.initGson相同, 只是不注册CodingNetRawTypeAdapters
+        myReflectiveGson = new GsonBuilder()
+                .registerTypeAdapter(Date.class, new CodingNetDateAdapter())
+                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .create();
+    }
+
+    @Benchmark
+    public JsonElement parseResponse() throws IOException {
+        return CodingNetConnection.parseResponse(new ByteArrayInputStream(myContent));
+    }
+
+    @Benchmark
+    public List<?> treeDecode() throws IOException {
+        JsonElement response = CodingNetConnection.parseResponse(new ByteArrayInputStream(myContent));
+        List<Object> result = new ArrayList<Object>(pageSize);
+        for (JsonElement item : getList(response)) {
+            result.add(CodingNetApiUtil.createDataFromRaw(CodingNetApiUtil.fromJson(item, myPayload.myRawClass), myPayload.myResultClass));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<?> treeDecodeReflective() throws IOException {
+        JsonElement response = CodingNetConnection.parseResponse(new ByteArrayInputStream(myContent));
+        List<Object> result = new ArrayList<Object>(pageSize);
+        for (JsonElement item : getList(response)) {
+            result.add(CodingNetApiUtil.createDataFromRaw(myReflectiveGson.fromJson(item, myPayload.myRawClass), myPayload.myResultClass));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public CodingNetEnvelopeDecoder.Page<?> streamDecode() throws IOException {
+        return CodingNetEnvelopeDecoder.decodePage(new ByteArrayInputStream(myContent), myPayload.myRawClass, myPayload.myResultClass);
+    }
+
+    @NotNull
+    private static JsonArray getList(@NotNull JsonElement response) {
+        JsonObject data = response.getAsJsonObject().getAsJsonObject("data");
+        return data.getAsJsonArray("list");
+    }
+}
@@ -17,32 +17,67 @@
 package org.coding.git;
 
 import com.google.gson.annotations.SerializedName;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author robin
  */
 public enum CodingNetOpenAPICodeMsg {
 
-    USER_PASSWORD_NO_CORRECT(1, UserPasswordNoCorrect.class),
-    NEED_VERIFICATION_CODE(903, NeedVerificationCode.class),
-    NO_LOGIN(1000, NoLogin.class),
-    NO_EXIST_USER(1001, NoExistUser.class),
-    LOGIN_EXPIRED(1029, LoginExpired.class),
-    AUTH_ERROR(1402, AuthError.class),
-    NEED_TWO_FACTOR_AUTH_CODE(3205, null),
-    TWO_FACTOR_AUTH_CODE_REQUIRED(3209, null),
-    USER_LOCKED(1009, UserLocked.class);
+    USER_PASSWORD_NO_CORRECT(1, UserPasswordNoCorrect.class, Reaction.AUTHENTICATION),
+    NEED_VERIFICATION_CODE(903, NeedVerificationCode.class, Reaction.AUTHENTICATION),
+    NO_LOGIN(1000, NoLogin.class, Reaction.AUTHENTICATION),
+    NO_EXIST_USER(1001, NoExistUser.class, Reaction.AUTHENTICATION),
+    LOGIN_EXPIRED(1029, LoginExpired.class, Reaction.TWO_FACTOR),
+    AUTH_ERROR(1402, AuthError.class, Reaction.TWO_FACTOR),
+    NEED_TWO_FACTOR_AUTH_CODE(3205, null, Reaction.NONE),
+    TWO_FACTOR_AUTH_CODE_REQUIRED(3209, null, Reaction.NONE),
+    USER_LOCKED(1009, UserLocked.class, Reaction.AUTHENTICATION);
+
+    private static final Map<Integer, CodingNetOpenAPICodeMsg> ourByCode = new HashMap<Integer, CodingNetOpenAPICodeMsg>();
+
+    static {
+        for (CodingNetOpenAPICodeMsg codeMsg : values()) {
+            ourByCode.put(codeMsg.code, codeMsg);
+        }
+    }
 
+    /**
+     * 业务码对应的处理方式
+     */
+    public enum Reaction {
+        /**
+         * 不是错误, 由调用方自行处理
+         */
+        NONE,
+        AUTHENTICATION,
+        TWO_FACTOR
+    }
 
     private int code;
 
 
     private Class clazz;
 
-    CodingNetOpenAPICodeMsg(int code, Class clazz) {
+    private Reaction reaction;
+
+    CodingNetOpenAPICodeMsg(int code, Class clazz, Reaction reaction) {
         this.code = code;
         this.clazz = clazz;
+        this.reaction = reaction;
+    }
 
+    /**
+     * @param code 业务码, 成功码0不在表中
+     * @return 未知业务码时为null
+     */
+    @Nullable
+    public static CodingNetOpenAPICodeMsg forCode(int code) {
+        return ourByCode.get(code);
     }
 
     public Class getClazz() {
@@ -53,6 +88,18 @@ public enum CodingNetOpenAPICodeMsg {
         return code;
     }
 
+    @NotNull
+    public Reaction getReaction() {
+        return reaction;
+    }
+
+    /**
+     * @return 会话已失效, 需要重新登录
+     */
+    public boolean isSessionExpired() {
+        return this == NO_LOGIN || this == LOGIN_EXPIRED;
+    }
+
     public interface ICodingNetOpenAPICodeMsg {
         String getMessage();
     }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.actions;
+
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.project.DumbAwareAction;
+import org.coding.git.api.CodingNetMetrics;
+import org.coding.git.util.CodingNetNotifications;
+import org.coding.git.util.CodingNetUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.datatransfer.StringSelection;
+
+/**
+ * 把{@link CodingNetMetrics}的当前快照写入idea.log并复制到剪贴板
+ *
+ * @author robin
+ */
+public class CodingNetDumpMetricsAction extends DumbAwareAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        int endpoints = CodingNetMetrics.snapshot().size();
+        String snapshot = CodingNetMetrics.format();
+        CodingNetUtil.LOG.info("Coding.net request metrics:\n" + snapshot);
+        CopyPasteManager.getInstance().setContents(new StringSelection(snapshot));
+        CodingNetNotifications.showInfoDialog(e.getProject(), "Coding.net Request Metrics",
+                "Metrics of " + endpoints + " endpoint(s) were written to idea.log and copied to the clipboard.");
+    }
+}
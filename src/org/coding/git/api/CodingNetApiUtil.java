@@ -16,6 +16,7 @@
 package org.coding.git.api;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.CharsetToolkit;
@@ -32,8 +33,13 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author robin
@@ -48,6 +54,11 @@ public class CodingNetApiUtil {
 
     private static final String PER_PAGE = "pageSize=500";
 
+    /**
+     * 按偏移量获取issue时每页的条数
+     */
+    public static final int ISSUES_PAGE_SIZE = 100;
+
     private static final Header ACCEPT_V3_JSON_HTML_MARKUP = new BasicHeader("Accept", "application/vnd.github.v3.html+json");
     private static final Header ACCEPT_JSON = new BasicHeader("Accept", "application/json");
 
@@ -56,11 +67,18 @@ public class CodingNetApiUtil {
 
     private static Gson initGson() {
         GsonBuilder builder = new GsonBuilder();
-        builder.setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        builder.registerTypeAdapter(Date.class, new CodingNetDateAdapter());
         builder.setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES);
+        //--*Raw类使用手写的解析器, 其余类型仍按上面的命名策略反射绑定
+        builder.registerTypeAdapterFactory(new CodingNetRawTypeAdapters());
         return builder.create();
     }
 
+    @NotNull
+    static TypeAdapter<Date> getDateAdapter() {
+        return gson.getAdapter(Date.class);
+    }
+
     @NotNull
     public static <T> T fromJson(@Nullable JsonElement json, @NotNull Class<T> classT) throws IOException {
         if (json == null) {
@@ -83,6 +101,25 @@ public class CodingNetApiUtil {
         return res;
     }
 
+    /**
+     * 从流中读取下一个JSON值并转换为对象, 用于流式解码列表元素
+     */
+    @NotNull
+    static <T> T fromJson(@NotNull JsonReader reader, @NotNull Class<T> classT) throws IOException {
+        T res;
+        try {
+            res = gson.fromJson(reader, classT);
+        } catch (ClassCastException e) {
+            throw new CodingNetJsonException("Parse exception while converting JSON to object " + classT.toString(), e);
+        } catch (JsonParseException e) {
+            throw new CodingNetJsonException("Parse exception while converting JSON to object " + classT.toString(), e);
+        }
+        if (res == null) {
+            throw new CodingNetJsonException("Empty Json response");
+        }
+        return res;
+    }
+
     @NotNull
     public static <Raw extends ICodingNetDataConstructor, Result> Result createDataFromRaw(@NotNull Raw rawObject, @NotNull Class<Result> resultClass)
             throws CodingNetJsonException {
@@ -288,16 +325,30 @@ public class CodingNetApiUtil {
     @NotNull
     public static List<CodingNetRepo> getUserRepos(@NotNull CodingNetConnection connection) throws IOException {
         try {
-            String path = "/api/user/projects?" + PER_PAGE;
-
-            CodingNetConnection.PagedRequest<CodingNetRepo> request = new CodingNetConnection.PagedRequest<CodingNetRepo>(path, CodingNetRepo.class, CodingNetRepoRaw[].class, ACCEPT_JSON);
-            return request.getAll(connection);
+            return createUserReposRequest().getAll(connection);
         } catch (CodingNetConfusingException e) {
             e.setDetails("Can't get user repositories");
             throw e;
         }
     }
 
+    /**
+     * 当前用户仓库的惰性数据流, 按需分页请求
+     *
+     * @param connection
+     * @return
+     */
+    @NotNull
+    public static Stream<CodingNetRepo> streamUserRepos(@NotNull CodingNetConnection connection) {
+        return createUserReposRequest().stream(connection);
+    }
+
+    @NotNull
+    private static CodingNetConnection.PagedRequest<CodingNetRepo> createUserReposRequest() {
+        String path = "/api/user/projects?" + PER_PAGE;
+        return new CodingNetConnection.PagedRequest<CodingNetRepo>(path, CodingNetRepo.class, CodingNetRepoRaw[].class, ACCEPT_JSON);
+    }
+
     @NotNull
     public static List<CodingNetRepo> getUserRepos(@NotNull CodingNetConnection connection, @NotNull String user) throws IOException {
         try {
@@ -342,22 +393,41 @@ public class CodingNetApiUtil {
         }
     }
 
+    /**
+     * 各组织的仓库并发获取, 见{@link CodingNetAsyncApi#getMembershipRepos(CodingNetConnection)};
+     * 已在异步线程池中执行时依次获取, 不阻塞等待同一线程池中的请求
+     *
+     * @param connection
+     * @return
+     * @throws IOException
+     */
     @NotNull
     public static List<CodingNetRepoOrg> getMembershipRepos(@NotNull CodingNetConnection connection) throws IOException {
-        String orgsPath = "/user/orgs?" + PER_PAGE;
-        CodingNetConnection.PagedRequest<CodingNetOrg> orgsRequest = new CodingNetConnection.PagedRequest<CodingNetOrg>(orgsPath, CodingNetOrg.class, CodingNetOrgRaw[].class);
-
+        if (!CodingNetAsyncApi.isPoolThread()) {
+            return CodingNetAsyncApi.await(CodingNetAsyncApi.getMembershipRepos(connection));
+        }
         List<CodingNetRepoOrg> repos = new ArrayList<CodingNetRepoOrg>();
-        for (CodingNetOrg org : orgsRequest.getAll(connection)) {
-            String path = "/orgs/" + org.getLogin() + "/repos?type=member&" + PER_PAGE;
-            CodingNetConnection.PagedRequest<CodingNetRepoOrg> request =
-                    new CodingNetConnection.PagedRequest<CodingNetRepoOrg>(path, CodingNetRepoOrg.class, CodingNetRepoRaw[].class, ACCEPT_JSON);
-            repos.addAll(request.getAll(connection));
+        for (CodingNetOrg org : getUserOrgs(connection)) {
+            repos.addAll(getOrgMemberRepos(connection, org));
         }
-
         return repos;
     }
 
+    @NotNull
+    public static List<CodingNetOrg> getUserOrgs(@NotNull CodingNetConnection connection) throws IOException {
+        String orgsPath = "/user/orgs?" + PER_PAGE;
+        CodingNetConnection.PagedRequest<CodingNetOrg> orgsRequest = new CodingNetConnection.PagedRequest<CodingNetOrg>(orgsPath, CodingNetOrg.class, CodingNetOrgRaw[].class);
+        return orgsRequest.getAll(connection);
+    }
+
+    @NotNull
+    public static List<CodingNetRepoOrg> getOrgMemberRepos(@NotNull CodingNetConnection connection, @NotNull CodingNetOrg org) throws IOException {
+        String path = "/orgs/" + org.getLogin() + "/repos?type=member&" + PER_PAGE;
+        CodingNetConnection.PagedRequest<CodingNetRepoOrg> request =
+                new CodingNetConnection.PagedRequest<CodingNetRepoOrg>(path, CodingNetRepoOrg.class, CodingNetRepoRaw[].class, ACCEPT_JSON);
+        return request.getAll(connection);
+    }
+
     @NotNull
     public static List<CodingNetRepo> getWatchedRepos(@NotNull CodingNetConnection connection) throws IOException {
         String pathWatched = "/user/subscriptions?" + PER_PAGE;
@@ -432,10 +502,18 @@ public class CodingNetApiUtil {
     @NotNull
     public static List<CodingNetRepo> getForks(@NotNull CodingNetConnection connection, @NotNull String owner, @NotNull String name)
             throws IOException {
+        return createForksRequest(owner, name).getAll(connection);
+    }
+
+    @NotNull
+    public static Stream<CodingNetRepo> streamForks(@NotNull CodingNetConnection connection, @NotNull String owner, @NotNull String name) {
+        return createForksRequest(owner, name).stream(connection);
+    }
+
+    @NotNull
+    private static CodingNetConnection.PagedRequest<CodingNetRepo> createForksRequest(@NotNull String owner, @NotNull String name) {
         String path = "/repos/" + owner + "/" + name + "/forks?" + PER_PAGE;
-        CodingNetConnection.PagedRequest<CodingNetRepo> requestWatched =
-                new CodingNetConnection.PagedRequest<CodingNetRepo>(path, CodingNetRepo.class, CodingNetRepoRaw[].class, ACCEPT_JSON);
-        return requestWatched.getAll(connection);
+        return new CodingNetConnection.PagedRequest<CodingNetRepo>(path, CodingNetRepo.class, CodingNetRepoRaw[].class, ACCEPT_JSON);
     }
 
     @NotNull
@@ -487,27 +565,129 @@ public class CodingNetApiUtil {
                                                          int max,
                                                          boolean withClosed) throws IOException {
         try {
-            String state = "state=" + (withClosed ? "all" : "open");
-            String path;
-            if (StringUtil.isEmptyOrSpaces(assigned)) {
-                path = "/repos/" + user + "/" + repo + "/issues?" + PER_PAGE + "&" + state;
-            } else {
-                path = "/repos/" + user + "/" + repo + "/issues?assignee=" + assigned + "&" + PER_PAGE + "&" + state;
-            }
+            String path = getIssuesPath(user, repo, assigned, withClosed) + "&" + PER_PAGE;
 
             CodingNetConnection.PagedRequest<CodingNetIssue> request = new CodingNetConnection.PagedRequest<CodingNetIssue>(path, CodingNetIssue.class, CodingNetIssueRaw[].class, ACCEPT_JSON);
 
-            List<CodingNetIssue> result = new ArrayList<CodingNetIssue>();
-            while (request.hasNext() && max > result.size()) {
-                result.addAll(request.next(connection));
+            return request.stream(connection).limit(max).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            //--惰性分页流把网络错误包装为UncheckedIOException
+            IOException cause = e.getCause();
+            if (cause instanceof CodingNetConfusingException) {
+                ((CodingNetConfusingException) cause).setDetails("Can't get assigned issues: " + user + "/" + repo + " - " + assigned);
+            }
+            throw cause;
+        }
+    }
+
+    /**
+     * 按偏移量获取issue, offset/limit映射为OpenAPI的page/pageSize, 只请求覆盖该区间的分页
+     *
+     * @param connection
+     * @param user
+     * @param repo
+     * @param assigned
+     * @param offset
+     * @param limit
+     * @param withClosed
+     * @param pageCache  已获取的分页, 以页码为键, 同一会话内可以复用; 为null时不缓存
+     * @return
+     * @throws IOException
+     */
+    @NotNull
+    public static List<CodingNetIssue> getIssuesAssigned(@NotNull CodingNetConnection connection,
+                                                         @NotNull String user,
+                                                         @NotNull String repo,
+                                                         @Nullable String assigned,
+                                                         int offset,
+                                                         int limit,
+                                                         boolean withClosed,
+                                                         @Nullable Map<Integer, List<CodingNetIssue>> pageCache) throws IOException {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        int firstPage = offset / ISSUES_PAGE_SIZE + 1;
+        int lastPage = (offset + limit - 1) / ISSUES_PAGE_SIZE + 1;
+
+        List<CodingNetIssue> result = new ArrayList<CodingNetIssue>(limit);
+        for (int page = firstPage; page <= lastPage; page++) {
+            List<CodingNetIssue> issues = pageCache == null ? null : pageCache.get(page);
+            if (issues == null) {
+                issues = getIssuesPage(connection, user, repo, assigned, page, withClosed);
+                if (pageCache != null) {
+                    pageCache.put(page, issues);
+                }
+            }
+
+            int from = page == firstPage ? Math.min(offset % ISSUES_PAGE_SIZE, issues.size()) : 0;
+            result.addAll(issues.subList(from, issues.size()));
+
+            //--不满一页说明已经到末尾
+            if (issues.size() < ISSUES_PAGE_SIZE) {
+                break;
             }
-            return result;
+        }
+        return result.size() > limit ? new ArrayList<CodingNetIssue>(result.subList(0, limit)) : result;
+    }
+
+    @NotNull
+    private static List<CodingNetIssue> getIssuesPage(@NotNull CodingNetConnection connection,
+                                                      @NotNull String user,
+                                                      @NotNull String repo,
+                                                      @Nullable String assigned,
+                                                      int page,
+                                                      boolean withClosed) throws IOException {
+        try {
+            String path = getIssuesPath(user, repo, assigned, withClosed) + "&page=" + page + "&pageSize=" + ISSUES_PAGE_SIZE;
+
+            CodingNetConnection.PagedRequest<CodingNetIssue> request = new CodingNetConnection.PagedRequest<CodingNetIssue>(path, CodingNetIssue.class, CodingNetIssueRaw[].class, ACCEPT_JSON);
+
+            return request.next(connection);
         } catch (CodingNetConfusingException e) {
-            e.setDetails("Can't get assigned issues: " + user + "/" + repo + " - " + assigned);
+            e.setDetails("Can't get assigned issues: " + user + "/" + repo + " - " + assigned + ", page " + page);
             throw e;
         }
     }
 
+    /**
+     * 按更新时间倒序获取全部issue(含已关闭), 用于增量同步; 服务端可能忽略排序和since, 调用方不能依赖返回顺序
+     *
+     * @param connection
+     * @param user
+     * @param repo
+     * @param since      不为null时只请求此时间之后更新过的issue
+     * @return
+     */
+    @NotNull
+    public static Stream<CodingNetIssue> streamIssuesUpdatedSince(@NotNull CodingNetConnection connection,
+                                                                  @NotNull String user,
+                                                                  @NotNull String repo,
+                                                                  @Nullable Date since) {
+        String path = getIssuesPath(user, repo, null, true) + "&sort=updated&direction=desc&" + PER_PAGE;
+        if (since != null) {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            try {
+                path += "&since=" + URLEncoder.encode(format.format(since), CharsetToolkit.UTF8);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        CodingNetConnection.PagedRequest<CodingNetIssue> request = new CodingNetConnection.PagedRequest<CodingNetIssue>(path, CodingNetIssue.class, CodingNetIssueRaw[].class, ACCEPT_JSON);
+        return request.stream(connection);
+    }
+
+    @NotNull
+    private static String getIssuesPath(@NotNull String user, @NotNull String repo, @Nullable String assigned, boolean withClosed) {
+        String state = "state=" + (withClosed ? "all" : "open");
+        if (StringUtil.isEmptyOrSpaces(assigned)) {
+            return "/repos/" + user + "/" + repo + "/issues?" + state;
+        }
+        return "/repos/" + user + "/" + repo + "/issues?assignee=" + assigned + "&" + state;
+    }
+
     @NotNull
   /*
    * All issues - open and closed
@@ -568,11 +748,15 @@ public class CodingNetApiUtil {
         }
     }
 
-    public static void setIssueState(@NotNull CodingNetConnection connection,
-                                     @NotNull String user,
-                                     @NotNull String repo,
-                                     @NotNull String id,
-                                     boolean open)
+    /**
+     * @return 修改后的issue
+     */
+    @NotNull
+    public static CodingNetIssue setIssueState(@NotNull CodingNetConnection connection,
+                                               @NotNull String user,
+                                               @NotNull String repo,
+                                               @NotNull String id,
+                                               boolean open)
             throws IOException {
         try {
             String path = "/repos/" + user + "/" + repo + "/issues/" + id;
@@ -581,7 +765,7 @@ public class CodingNetApiUtil {
 
             JsonElement result = connection.patchRequest(path, gson.toJson(request), ACCEPT_JSON);
 
-            createDataFromRaw(fromJson(result, CodingNetIssueRaw.class), CodingNetIssue.class);
+            return createDataFromRaw(fromJson(result, CodingNetIssueRaw.class), CodingNetIssue.class);
         } catch (CodingNetConfusingException e) {
             e.setDetails("Can't set issue state: " + user + "/" + repo + " - " + id + "@" + (open ? "open" : "closed"));
             throw e;
@@ -658,18 +842,18 @@ public class CodingNetApiUtil {
     public static List<CodingNetPullRequest> getPullRequests(@NotNull CodingNetConnection connection, @NotNull String user, @NotNull String repo)
             throws IOException {
         try {
-            String path = "/repos/" + user + "/" + repo + "/pulls?" + PER_PAGE;
-
-            CodingNetConnection.PagedRequest<CodingNetPullRequest> request =
-                    new CodingNetConnection.PagedRequest<CodingNetPullRequest>(path, CodingNetPullRequest.class, CodingNetPullRequestRaw[].class, ACCEPT_V3_JSON_HTML_MARKUP);
-
-            return request.getAll(connection);
+            return getPullRequests(user, repo).getAll(connection);
         } catch (CodingNetConfusingException e) {
             e.setDetails("Can't get pull requests" + user + "/" + repo);
             throw e;
         }
     }
 
+    @NotNull
+    public static Stream<CodingNetPullRequest> streamPullRequests(@NotNull CodingNetConnection connection, @NotNull String user, @NotNull String repo) {
+        return getPullRequests(user, repo).stream(connection);
+    }
+
     @NotNull
     public static CodingNetConnection.PagedRequest<CodingNetPullRequest> getPullRequests(@NotNull String user, @NotNull String repo) {
         String path = "/repos/" + user + "/" + repo + "/pulls?" + PER_PAGE;
@@ -718,40 +902,40 @@ public class CodingNetApiUtil {
     public static List<CodingNetBranch> getRepoBranches(@NotNull CodingNetConnection connection, @NotNull String user, @NotNull String repo)
             throws IOException {
         try {
-            String path = "/repos/" + user + "/" + repo + "/branches?" + PER_PAGE;
-
-            CodingNetConnection.PagedRequest<CodingNetBranch> request =
-                    new CodingNetConnection.PagedRequest<CodingNetBranch>(path, CodingNetBranch.class, CodingNetBranchRaw[].class, ACCEPT_JSON);
-
-            return request.getAll(connection);
+            return createRepoBranchesRequest(user, repo).getAll(connection);
         } catch (CodingNetConfusingException e) {
             e.setDetails("Can't get repository branches: " + user + "/" + repo);
             throw e;
         }
     }
 
+    @NotNull
+    public static Stream<CodingNetBranch> streamRepoBranches(@NotNull CodingNetConnection connection, @NotNull String user, @NotNull String repo) {
+        return createRepoBranchesRequest(user, repo).stream(connection);
+    }
+
+    @NotNull
+    private static CodingNetConnection.PagedRequest<CodingNetBranch> createRepoBranchesRequest(@NotNull String user, @NotNull String repo) {
+        String path = "/repos/" + user + "/" + repo + "/branches?" + PER_PAGE;
+        return new CodingNetConnection.PagedRequest<CodingNetBranch>(path, CodingNetBranch.class, CodingNetBranchRaw[].class, ACCEPT_JSON);
+    }
+
     @Nullable
     public static CodingNetRepo findForkByUser(@NotNull CodingNetConnection connection,
                                                @NotNull String user,
                                                @NotNull String repo,
                                                @NotNull String forkUser) throws IOException {
         try {
-            String path = "/repos/" + user + "/" + repo + "/forks?" + PER_PAGE;
-
-            CodingNetConnection.PagedRequest<CodingNetRepo> request = new CodingNetConnection.PagedRequest<CodingNetRepo>(path, CodingNetRepo.class, CodingNetRepoRaw[].class, ACCEPT_JSON);
-
-            while (request.hasNext()) {
-                for (CodingNetRepo fork : request.next(connection)) {
-                    if (StringUtil.equalsIgnoreCase(fork.getUserName(), forkUser)) {
-                        return fork;
-                    }
-                }
+            return streamForks(connection, user, repo)
+                    .filter(fork -> StringUtil.equalsIgnoreCase(fork.getUserName(), forkUser))
+                    .findFirst()
+                    .orElse(null);
+        } catch (UncheckedIOException e) {
+            IOException cause = e.getCause();
+            if (cause instanceof CodingNetConfusingException) {
+                ((CodingNetConfusingException) cause).setDetails("Can't find fork by user: " + user + "/" + repo + " - " + forkUser);
             }
-
-            return null;
-        } catch (CodingNetConfusingException e) {
-            e.setDetails("Can't find fork by user: " + user + "/" + repo + " - " + forkUser);
-            throw e;
+            throw cause;
         }
     }
 
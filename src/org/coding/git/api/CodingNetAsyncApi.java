@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.intellij.util.ThrowableConvertor;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.coding.git.exceptions.CodingNetOperationCanceledException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * {@link CodingNetApiUtil}的异步版本, 请求在专用线程池中执行, 适合在EDT中发起后通过回调处理结果
+ * <p>
+ * 取消返回的Future会中止传入的连接, 该连接上所有未完成的请求都会以{@link org.coding.git.exceptions.CodingNetOperationCanceledException}结束,
+ * 因此互不相关的异步操作应使用各自的连接, 或通过{@link CodingNetConnection#fork()}创建子连接.
+ *
+ * @author robin
+ */
+public class CodingNetAsyncApi {
+    private static final int MAX_THREADS = 8;
+
+    private static final ExecutorService ourExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("CodingNet Async", MAX_THREADS);
+    //--当前线程正在执行线程池中的任务
+    private static final ThreadLocal<Boolean> ourInPool = new ThreadLocal<Boolean>();
+
+    private CodingNetAsyncApi() {
+    }
+
+    /**
+     * 在后台执行任意阻塞的API操作
+     *
+     * @param connection
+     * @param operation
+     * @param <T>
+     * @return
+     */
+    @NotNull
+    public static <T> CompletableFuture<T> supply(@NotNull final CodingNetConnection connection,
+                                                  @NotNull final ThrowableConvertor<CodingNetConnection, T, IOException> operation) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        final Future<?> task = ourExecutor.submit(() -> {
+            if (future.isDone()) return;
+            ourInPool.set(Boolean.TRUE);
+            try {
+                future.complete(operation.convert(connection));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                ourInPool.remove();
+            }
+        });
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                task.cancel(false);
+                connection.abort();
+            }
+        });
+        return future;
+    }
+
+    @NotNull
+    public static CompletableFuture<CodingNetUser> getCurrentUser(@NotNull CodingNetConnection connection) {
+        return supply(connection, CodingNetApiUtil::getCurrentUser);
+    }
+
+    @NotNull
+    public static CompletableFuture<List<CodingNetRepo>> getUserRepos(@NotNull CodingNetConnection connection) {
+        return supply(connection, CodingNetApiUtil::getUserRepos);
+    }
+
+    @NotNull
+    public static CompletableFuture<List<CodingNetBranch>> getRepoBranches(@NotNull CodingNetConnection connection,
+                                                                           @NotNull String user,
+                                                                           @NotNull String repo) {
+        return supply(connection, c -> CodingNetApiUtil.getRepoBranches(c, user, repo));
+    }
+
+    /**
+     * 先获取组织列表, 再并发获取各组织下的仓库, 结果按组织顺序合并
+     * <p>
+     * 每个请求使用传入连接的子连接; 任一请求失败时取消其余请求, 返回的Future以该异常结束.
+     * 取消返回的Future只中止这些子连接, 传入的连接仍可继续使用.
+     *
+     * @param connection
+     * @return
+     */
+    @NotNull
+    public static CompletableFuture<List<CodingNetRepoOrg>> getMembershipRepos(@NotNull final CodingNetConnection connection) {
+        final List<CompletableFuture<?>> pending = new CopyOnWriteArrayList<CompletableFuture<?>>();
+        final CompletableFuture<List<CodingNetOrg>> orgsFuture = supplyForked(connection, CodingNetApiUtil::getUserOrgs);
+        pending.add(orgsFuture);
+        CompletableFuture<List<CodingNetRepoOrg>> result = orgsFuture.thenCompose(orgs -> {
+            final List<CompletableFuture<List<CodingNetRepoOrg>>> perOrg = new ArrayList<CompletableFuture<List<CodingNetRepoOrg>>>(orgs.size());
+            for (CodingNetOrg org : orgs) {
+                CompletableFuture<List<CodingNetRepoOrg>> future = supplyForked(connection, c -> CodingNetApiUtil.getOrgMemberRepos(c, org));
+                perOrg.add(future);
+                pending.add(future);
+            }
+            return allOrFirstFailure(perOrg).thenApply(ignore -> {
+                List<CodingNetRepoOrg> repos = new ArrayList<CodingNetRepoOrg>();
+                for (CompletableFuture<List<CodingNetRepoOrg>> future : perOrg) {
+                    repos.addAll(future.join());
+                }
+                return repos;
+            });
+        });
+        //--整体失败或被取消时中止其余请求
+        result.whenComplete((repos, error) -> {
+            if (error != null) {
+                for (CompletableFuture<?> future : pending) {
+                    future.cancel(false);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 与{@link CompletableFuture#allOf}相同, 但首个失败立即结束, 不等待其余请求
+     */
+    @NotNull
+    private static CompletableFuture<Void> allOrFirstFailure(@NotNull List<? extends CompletableFuture<?>> futures) {
+        final CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+        for (CompletableFuture<?> future : futures) {
+            future.whenComplete((value, error) -> {
+                if (error != null) all.completeExceptionally(unwrap(error));
+            });
+        }
+        return all;
+    }
+
+    /**
+     * @return 当前线程是否正在执行本线程池中的任务; 此时不应阻塞等待同一线程池中的其他任务, 否则可能耗尽线程池
+     */
+    static boolean isPoolThread() {
+        return ourInPool.get() != null;
+    }
+
+    /**
+     * 在子连接上执行, 取消时只中止该子连接
+     */
+    @NotNull
+    private static <T> CompletableFuture<T> supplyForked(@NotNull CodingNetConnection connection,
+                                                         @NotNull ThrowableConvertor<CodingNetConnection, T, IOException> operation) {
+        final CodingNetConnection fork = connection.fork();
+        CompletableFuture<T> future = supply(fork, operation);
+        future.whenComplete((result, error) -> {
+            try {
+                fork.close();
+            } catch (IOException ignore) {
+            }
+        });
+        return future;
+    }
+
+    @NotNull
+    private static Throwable unwrap(@NotNull Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * 阻塞等待异步操作, 供同步API使用; 等待被中断时取消该操作
+     *
+     * @param future
+     * @param <T>
+     * @return
+     * @throws IOException
+     */
+    static <T> T await(@NotNull CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new CodingNetOperationCanceledException("Operation canceled", e);
+        } catch (CancellationException e) {
+            throw new CodingNetOperationCanceledException("Operation canceled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+}
@@ -20,48 +20,43 @@ import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.CharsetToolkit;
-import com.intellij.util.net.IdeHttpClientHelpers;
-import com.intellij.util.net.ssl.CertificateManager;
+import com.intellij.util.Consumer;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.apache.http.*;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.Credentials;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CookieStore;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.*;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.config.ConnectionConfig;
-import org.apache.http.conn.ssl.X509HostnameVerifier;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.*;
-import org.apache.http.impl.cookie.BasicClientCookie;
 import org.apache.http.message.BasicHeader;
-import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.coding.git.CodingNetOpenAPICodeMsg;
 import org.coding.git.exceptions.*;
-import org.coding.git.util.CodingNetSettings;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.annotations.TestOnly;
 import org.coding.git.util.CodingNetAuthData;
 import org.coding.git.util.CodingNetUrlUtil;
 import org.coding.git.util.CodingNetUtil;
 
 import javax.net.ssl.SSLHandshakeException;
 import java.awt.*;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.security.cert.CertificateException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static org.coding.git.api.CodingNetApiUtil.createDataFromRaw;
 import static org.coding.git.api.CodingNetApiUtil.fromJson;
 
 /**
@@ -75,26 +70,72 @@ import static org.coding.git.api.CodingNetApiUtil.fromJson;
 public class CodingNetConnection {
     private static final Logger LOG = CodingNetUtil.LOG;
 
-    private static final HttpRequestInterceptor PREEMPTIVE_BASIC_AUTH = new PreemptiveBasicAuthInterceptor();
+    private static final long RETRY_WAIT_INTERVAL = 100;
+    private static final int SC_TOO_MANY_REQUESTS = 429;
 
     @NotNull
     private final String myHost;
     @NotNull
-    private final CloseableHttpClient myClient;
-    private final boolean myReusable;
+    private final CodingNetAuthData myAuth;
+    @NotNull
+    private final CodingNetHttpClientRegistry.ClientKey myClientKey;
+    @NotNull
+    private final Collection<Header> myAuthHeaders;
+    @NotNull
+    private final CodingNetRequestBudget.Budget myBudget;
 
-    private volatile HttpUriRequest myRequest;
+    @Nullable
+    private final CodingNetConnection myParent;
+    //--所有进行中的请求, 多个线程可以同时使用同一个连接
+    private final Set<HttpUriRequest> myRequests = Collections.newSetFromMap(new ConcurrentHashMap<HttpUriRequest, Boolean>());
+    private final Set<CodingNetConnection> myChildren = Collections.newSetFromMap(new ConcurrentHashMap<CodingNetConnection, Boolean>());
     private volatile boolean myAborted;
+    @Nullable
+    private volatile ProgressIndicator myIndicator;
+    private volatile boolean myBackground;
+    //--成功执行过POST/PATCH/DELETE, 任务不能再整体重放
+    private volatile boolean myRemoteModified;
 
-    @TestOnly
+    /**
+     * 底层HttpClient由{@link CodingNetHttpClientRegistry}按账号共享, 连接对象本身很轻, 可以随用随建
+     *
+     * @param auth
+     */
     public CodingNetConnection(@NotNull CodingNetAuthData auth) {
-        this(auth, false);
+        myHost = auth.getHost();
+        myAuth = auth;
+        myClientKey = CodingNetHttpClientRegistry.ClientKey.create(auth);
+        myAuthHeaders = createHeaders(auth);
+        myBudget = CodingNetRequestBudget.get(myHost + " " + auth.getAccount());
+        myParent = null;
     }
 
-    public CodingNetConnection(@NotNull CodingNetAuthData auth, boolean reusable) {
-        myHost = auth.getHost();
-        myClient = createClient(auth);
-        myReusable = reusable;
+    private CodingNetConnection(@NotNull CodingNetConnection parent) {
+        myHost = parent.myHost;
+        myAuth = parent.myAuth;
+        myClientKey = parent.myClientKey;
+        myAuthHeaders = parent.myAuthHeaders;
+        myBudget = parent.myBudget;
+        myIndicator = parent.myIndicator;
+        myBackground = parent.myBackground;
+        myParent = parent;
+    }
+
+    /**
+     * 创建子连接, 共享认证信息与底层HttpClient, 但可以单独中止
+     * <p>
+     * 父连接中止时子连接一并中止; 子连接用完后应调用{@link #close()}从父连接上解除
+     *
+     * @return
+     */
+    @NotNull
+    public CodingNetConnection fork() {
+        CodingNetConnection child = new CodingNetConnection(this);
+        myChildren.add(child);
+        if (myAborted) {
+            child.abort();
+        }
+        return child;
     }
 
     public enum HttpVerb {
@@ -145,95 +186,65 @@ public class CodingNetConnection {
         return myHost;
     }
 
+    /**
+     * 中止本连接及其子连接上所有进行中的请求, 之后的请求都会以{@link CodingNetOperationCanceledException}结束
+     */
     public void abort() {
         if (myAborted) return;
         myAborted = true;
 
-        HttpUriRequest request = myRequest;
-        if (request != null) request.abort();
+        for (HttpUriRequest request : myRequests) {
+            request.abort();
+        }
+        for (CodingNetConnection child : myChildren) {
+            child.abort();
+        }
     }
 
-    public void close() throws IOException {
-        myClient.close();
+    /**
+     * 每次请求前后以及等待额度期间检查指示器的取消状态, 取消后中止本连接及其子连接; 子连接继承该指示器
+     *
+     * @param indicator
+     */
+    public void setProgressIndicator(@Nullable ProgressIndicator indicator) {
+        myIndicator = indicator;
     }
 
-    @NotNull
-    private static CloseableHttpClient createClient(@NotNull CodingNetAuthData auth) {
-        HttpClientBuilder builder = HttpClients.custom();
-
-        return builder
-                .setDefaultRequestConfig(createRequestConfig(auth))
-                .setDefaultConnectionConfig(createConnectionConfig(auth))
-                //.setDefaultCredentialsProvider(createCredentialsProvider(auth))
-                .setDefaultHeaders(createHeaders(auth))
-                .addInterceptorFirst(PREEMPTIVE_BASIC_AUTH)
-                .setSslcontext(CertificateManager.getInstance().getSslContext())
-                //--加入cookie
-                .setDefaultCookieStore(createCookieStore(auth))
-                .setHostnameVerifier((X509HostnameVerifier) CertificateManager.HOSTNAME_VERIFIER)
-                .build();
+    /**
+     * 后台连接(同步、预取、评论等)的请求在账号额度将尽时排队, 把剩余额度留给用户直接发起的请求, 见{@link CodingNetRequestBudget}
+     *
+     * @param background
+     */
+    public void setBackground(boolean background) {
+        myBackground = background;
     }
 
-
-    private static CookieStore createCookieStore(CodingNetAuthData auth) {
-        BasicCookieStore cookieStore = new BasicCookieStore();
-        CodingNetAuthData.BasicAuth basicAuth = auth.getBasicAuth();
-        if (basicAuth != null) {
-            String code = basicAuth.getSid();
-            if (code != null) {
-                BasicClientCookie cookie = new BasicClientCookie("sid", code);
-                cookie.setDomain(".coding.net");
-                cookie.setPath("/");
-                cookie.setSecure(true);
-                cookieStore.addCookie(cookie);
-            }
-        }
-        return cookieStore;
+    /**
+     * @return 本连接上是否已有修改远端数据的请求(POST/PATCH/DELETE)成功完成
+     */
+    public boolean isRemoteModified() {
+        return myRemoteModified;
     }
 
-
-    @NotNull
-    private static RequestConfig createRequestConfig(@NotNull CodingNetAuthData auth) {
-        RequestConfig.Builder builder = RequestConfig.custom();
-
-        int timeout = CodingNetSettings.getInstance().getConnectionTimeout();
-        builder
-                .setConnectTimeout(timeout)
-                .setSocketTimeout(timeout);
-
-        if (auth.isUseProxy()) {
-            IdeHttpClientHelpers.ApacheHttpClient4.setProxyForUrlIfEnabled(builder, auth.getHost());
+    private boolean isAborted() {
+        ProgressIndicator indicator = myIndicator;
+        if (!myAborted && indicator != null && indicator.isCanceled()) {
+            abort();
         }
-
-        return builder.build();
+        return myAborted;
     }
 
-    @NotNull
-    private static ConnectionConfig createConnectionConfig(@NotNull CodingNetAuthData auth) {
-        return ConnectionConfig.custom()
-                .setCharset(Consts.UTF_8)
-                .build();
-    }
-
-
-    @NotNull
-    private static CredentialsProvider createCredentialsProvider(@NotNull CodingNetAuthData auth) {
-        CredentialsProvider provider = new BasicCredentialsProvider();
-        // Basic authentication
-        CodingNetAuthData.BasicAuth basicAuth = auth.getBasicAuth();
-        if (basicAuth != null) {
-            provider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(basicAuth.getLogin(), basicAuth.getPassword()));
-        }
-
-        if (auth.isUseProxy()) {
-            IdeHttpClientHelpers.ApacheHttpClient4.setProxyCredentialsForUrlIfEnabled(provider, auth.getHost());
+    /**
+     * 共享的HttpClient由{@link CodingNetHttpClientRegistry}持有, 这里不再关闭底层连接池
+     */
+    public void close() throws IOException {
+        if (myParent != null) {
+            myParent.myChildren.remove(this);
         }
-
-        return provider;
     }
 
     @NotNull
-    private static Collection<? extends Header> createHeaders(@NotNull CodingNetAuthData auth) {
+    private static Collection<Header> createHeaders(@NotNull CodingNetAuthData auth) {
         List<Header> headers = new ArrayList<Header>();
         CodingNetAuthData.TokenAuth tokenAuth = auth.getTokenAuth();
         if (tokenAuth != null) {
@@ -256,81 +267,224 @@ public class CodingNetConnection {
                                  @Nullable String requestBody,
                                  @NotNull Collection<Header> headers,
                                  @NotNull HttpVerb verb) throws IOException {
-        return doRequest(getRequestUrl(myHost, path), requestBody, headers, verb);
+        String uri = getRequestUrl(myHost, path);
+        if (verb == HttpVerb.GET) {
+            return doSharedRequest(uri, headers, "json", this::decodeResponsePage, ResponsePage::copy);
+        }
+        ResponsePage page = doRequest(uri, requestBody, headers, verb, this::decodeResponsePage);
+        if (verb != HttpVerb.HEAD) {
+            for (CodingNetConnection connection = this; connection != null; connection = connection.myParent) {
+                connection.myRemoteModified = true;
+            }
+        }
+        return page;
     }
 
     @NotNull
-    private ResponsePage doRequest(@NotNull String uri,
-                                   @Nullable String requestBody,
-                                   @NotNull Collection<Header> headers,
-                                   @NotNull HttpVerb verb) throws IOException {
-        if (myAborted) throw new CodingNetOperationCanceledException();
+    private ResponsePage decodeResponsePage(@Nullable InputStream content,
+                                            @Nullable String nextPage,
+                                            @NotNull Header[] responseHeaders) throws IOException {
+        if (content == null) {
+            return new ResponsePage(null, null, responseHeaders);
+        }
+
+        JsonElement ret = parseResponse(content);
+        if (ret.isJsonNull()) {
+            return new ResponsePage(null, null, responseHeaders);
+        }
+
+        //--守护CodingNet返回的业务状态码
+        checkCodingNetCode(ret);
+
+        return new ResponsePage(ret, nextPage, responseHeaders);
+    }
+
+    /**
+     * 合并并发的相同GET请求: host、账号、地址、Accept头和解码方式都相同的请求共享同一次HTTP交换与解码,
+     * 确有合并时每个调用方得到各自的结果副本
+     *
+     * @param uri
+     * @param headers
+     * @param kind    解码方式, 决定结果类型
+     * @param decoder
+     * @param copier  复制解码结果
+     * @return
+     * @throws IOException
+     */
+    private <R> R doSharedRequest(@NotNull final String uri,
+                                  @NotNull final Collection<Header> headers,
+                                  @NotNull String kind,
+                                  @NotNull final BodyDecoder<R> decoder,
+                                  @NotNull UnaryOperator<R> copier) throws IOException {
+        StringBuilder key = new StringBuilder()
+                .append(myHost).append('|').append(myAuth.getIdentity()).append('|').append(kind).append('|').append(uri);
+        for (Header header : headers) {
+            if ("Accept".equalsIgnoreCase(header.getName())) {
+                key.append('|').append(header.getValue());
+            }
+        }
+        return CodingNetRequestCoalescer.execute(key.toString(), this::isAborted,
+                () -> doRequest(uri, null, headers, HttpVerb.GET, decoder), copier);
+    }
+
+    /**
+     * 执行请求并把响应体交给decoder处理, 响应体在decoder返回后才释放
+     * <p>
+     * GET/HEAD遇到网络故障或5xx时按{@link CodingNetRetryPolicy}退避重试, 分页请求只重试失败的那一页;
+     * 同一host连续失败后熔断, 期间直接抛出503, 不再等待超时
+     *
+     * @param uri
+     * @param requestBody
+     * @param headers
+     * @param verb
+     * @param decoder
+     * @return
+     * @throws IOException
+     */
+    private <R> R doRequest(@NotNull String uri,
+                            @Nullable String requestBody,
+                            @NotNull Collection<Header> headers,
+                            @NotNull HttpVerb verb,
+                            @NotNull BodyDecoder<R> decoder) throws IOException {
+        CodingNetRetryPolicy.CircuitBreaker breaker = CodingNetRetryPolicy.getCircuitBreaker(myHost);
+        for (int attempt = 0; ; attempt++) {
+            if (isAborted()) throw new CodingNetOperationCanceledException();
+            //--先领取额度再检查熔断, 排队或被限流拒绝时不会占用探测请求
+            myBudget.acquire(myBackground, this::isAborted);
+            CodingNetStatusCodeException rejected = breaker.check();
+            if (rejected != null) throw rejected;
+
+            try {
+                return doSingleRequest(uri, requestBody, headers, verb, decoder, breaker);
+            } catch (CodingNetOperationCanceledException e) {
+                breaker.release();
+                throw e;
+            } catch (IOException e) {
+                if (!CodingNetRetryPolicy.isServerFailure(e)) {
+                    //--收到响应时已经计为成功; 没有响应(证书、域名错误等)无法判断服务端状态
+                    breaker.release();
+                    throw e;
+                }
+                breaker.onFailure();
+                if (!CodingNetRetryPolicy.shouldRetry(verb, attempt, e)) throw e;
+                CodingNetMetrics.recordRetry(verb.name(), uri);
+                LOG.info("Retrying " + verb + " " + CodingNetMetrics.normalize(uri) + " after " + e.getClass().getSimpleName() + ": " + e.getMessage());
+            } catch (RuntimeException | Error e) {
+                breaker.release();
+                throw e;
+            }
+            sleepBeforeRetry(CodingNetRetryPolicy.getDelay(attempt));
+        }
+    }
+
+    /**
+     * 分段等待, 连接中止时立即结束
+     */
+    private void sleepBeforeRetry(long millis) throws CodingNetOperationCanceledException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long remaining = millis;
+        while (remaining > 0) {
+            if (isAborted()) throw new CodingNetOperationCanceledException();
+            try {
+                Thread.sleep(Math.min(remaining, RETRY_WAIT_INTERVAL));
+            } catch (InterruptedException e) {
+                abort();
+                throw new CodingNetOperationCanceledException("Operation canceled", e);
+            }
+            remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        }
+    }
+
+    private <R> R doSingleRequest(@NotNull String uri,
+                                  @Nullable String requestBody,
+                                  @NotNull Collection<Header> headers,
+                                  @NotNull HttpVerb verb,
+                                  @NotNull BodyDecoder<R> decoder,
+                                  @NotNull CodingNetRetryPolicy.CircuitBreaker breaker) throws IOException {
+        if (isAborted()) throw new CodingNetOperationCanceledException();
 
         if (EventQueue.isDispatchThread() && !ApplicationManager.getApplication().isUnitTestMode()) {
             LOG.warn("Network operation in EDT"); // TODO: fix
         }
 
+        HttpRequestBase request = createRequest(uri, requestBody, headers, verb);
         CloseableHttpResponse response = null;
+        CodingNetMetrics.Sample sample = CodingNetMetrics.start(verb.name(), uri);
+        CodingNetRequestTracer.Trace trace = CodingNetRequestTracer.start(verb.name(), uri);
+        int status = -1;
+        Throwable error = null;
+        myRequests.add(request);
         try {
-            response = doREST(uri, requestBody, headers, verb);
+            //--加入集合之后再检查一次, 避免与abort()交错时漏掉中止
+            if (isAborted()) throw new CodingNetOperationCanceledException();
+
+            response = CodingNetHttpFixtures.execute(request, requestBody,
+                    () -> CodingNetHttpClientRegistry.getInstance().execute(myClientKey, myAuth, request));
 
-            if (myAborted) throw new CodingNetOperationCanceledException();
+            if (isAborted()) throw new CodingNetOperationCanceledException();
+            status = response.getStatusLine().getStatusCode();
+            sample.setStatus(status);
+            myBudget.update(response.getAllHeaders(), status);
+            //--收到非5xx响应即说明服务端可用, 与之后的状态码、业务码或解析结果无关
+            if (status < 500) breaker.onSuccess();
 
             //--守护应用层HTTP请求返回状态码
             checkStatusCode(response, requestBody);
 
             HttpEntity entity = response.getEntity();
-            if (entity == null) {
-                return createResponse(response);
-            }
+            long decodeStart = System.nanoTime();
+            R result = decoder.decode(entity == null ? null : sample.count(entity.getContent()), getNextPage(response), response.getAllHeaders());
+            sample.setDecodeNanos(System.nanoTime() - decodeStart);
 
-            JsonElement ret = parseResponse(entity.getContent());
-            if (ret.isJsonNull()) {
-                return createResponse(response);
-            }
-
-            //--守护CodingNet返回的业务状态码
-            checkCodingNetCode(ret);
-
-            String nextPage = null;
-            Header pageHeader = response.getFirstHeader("Link");
-            if (pageHeader != null) {
-                for (HeaderElement element : pageHeader.getElements()) {
-                    NameValuePair rel = element.getParameterByName("rel");
-                    if (rel != null && "next".equals(rel.getValue())) {
-                        String urlString = element.toString();
-                        int begin = urlString.indexOf('<');
-                        int end = urlString.lastIndexOf('>');
-                        if (begin == -1 || end == -1) {
-                            LOG.error("Invalid 'Link' header", "{" + pageHeader.toString() + "}");
-                            break;
-                        }
-
-                        nextPage = urlString.substring(begin + 1, end);
-                        break;
-                    }
-                }
-            }
-
-            return createResponse(ret, nextPage, response);
+            if (isAborted()) throw new CodingNetOperationCanceledException();
+            return result;
         } catch (SSLHandshakeException e) { // User canceled operation from CertificateManager
             if (e.getCause() instanceof CertificateException) {
                 LOG.info("Host SSL certificate is not trusted", e);
-                throw new CodingNetOperationCanceledException("Host SSL certificate is not trusted", e);
+                error = new CodingNetOperationCanceledException("Host SSL certificate is not trusted", e);
+                throw (CodingNetOperationCanceledException) error;
             }
+            error = e;
             throw e;
         } catch (IOException e) {
-            if (myAborted) throw new CodingNetOperationCanceledException("Operation canceled", e);
+            error = isAborted() ? new CodingNetOperationCanceledException("Operation canceled", e) : e;
+            throw (IOException) error;
+        } catch (RuntimeException | Error e) {
+            error = e;
             throw e;
         } finally {
-            myRequest = null;
+            sample.finish(error);
+            if (trace != null) trace.finish(status, error);
+            myRequests.remove(request);
             if (response != null) {
+                //--读完剩余内容, 连接才能回到连接池复用
+                EntityUtils.consumeQuietly(response.getEntity());
                 response.close();
             }
-            if (!myReusable) {
-                myClient.close();
+        }
+    }
+
+    @Nullable
+    private static String getNextPage(@NotNull CloseableHttpResponse response) {
+        Header pageHeader = response.getFirstHeader("Link");
+        if (pageHeader == null) {
+            return null;
+        }
+        for (HeaderElement element : pageHeader.getElements()) {
+            NameValuePair rel = element.getParameterByName("rel");
+            if (rel != null && "next".equals(rel.getValue())) {
+                String urlString = element.toString();
+                int begin = urlString.indexOf('<');
+                int end = urlString.lastIndexOf('>');
+                if (begin == -1 || end == -1) {
+                    LOG.error("Invalid 'Link' header", "{" + pageHeader.toString() + "}");
+                    return null;
+                }
+
+                return urlString.substring(begin + 1, end);
             }
         }
+        return null;
     }
 
     /**
@@ -340,40 +494,64 @@ public class CodingNetConnection {
      */
     private void checkCodingNetCode(JsonElement jsonElement) throws IOException {
         int code = jsonElement.getAsJsonObject().get("code").getAsInt();
-        System.out.println("Current Code is: " + code + " JsonElement is:" + jsonElement.toString());
-        if (code == CodingNetOpenAPICodeMsg.NO_LOGIN.getCode()) {
-            CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg codingNetOpenAPICodeMsg = (CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg) fromJson(jsonElement, CodingNetOpenAPICodeMsg.NO_LOGIN.getClazz());
-            throw new CodingNetAuthenticationException(codingNetOpenAPICodeMsg.getMessage());
-        } else if (code == CodingNetOpenAPICodeMsg.NO_EXIST_USER.getCode()) {
-            CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg codingNetOpenAPICodeMsg = (CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg) fromJson(jsonElement, CodingNetOpenAPICodeMsg.NO_EXIST_USER.getClazz());
-            throw new CodingNetAuthenticationException(codingNetOpenAPICodeMsg.getMessage());
-        } else if (code == CodingNetOpenAPICodeMsg.NEED_VERIFICATION_CODE.getCode()) {
-            CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg codingNetOpenAPICodeMsg = (CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg) fromJson(jsonElement, CodingNetOpenAPICodeMsg.NEED_VERIFICATION_CODE.getClazz());
-            throw new CodingNetAuthenticationException(codingNetOpenAPICodeMsg.getMessage());
-        } else if (code == CodingNetOpenAPICodeMsg.USER_LOCKED.getCode()) {
-            CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg codingNetOpenAPICodeMsg = (CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg) fromJson(jsonElement, CodingNetOpenAPICodeMsg.USER_LOCKED.getClazz());
-            throw new CodingNetAuthenticationException(codingNetOpenAPICodeMsg.getMessage());
-        } else if (code == CodingNetOpenAPICodeMsg.USER_PASSWORD_NO_CORRECT.getCode()) {
-            CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg codingNetOpenAPICodeMsg = (CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg) fromJson(jsonElement, CodingNetOpenAPICodeMsg.USER_PASSWORD_NO_CORRECT.getClazz());
-            throw new CodingNetAuthenticationException(codingNetOpenAPICodeMsg.getMessage());
-        } else if (code == CodingNetOpenAPICodeMsg.AUTH_ERROR.getCode()) {
-            CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg codingNetOpenAPICodeMsg = (CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg) fromJson(jsonElement, CodingNetOpenAPICodeMsg.AUTH_ERROR.getClazz());
-            throw new CodingNetTwoFactorAuthenticationException(codingNetOpenAPICodeMsg.getMessage());
-        } else if (code == CodingNetOpenAPICodeMsg.NEED_TWO_FACTOR_AUTH_CODE.getCode() || code == CodingNetOpenAPICodeMsg.TWO_FACTOR_AUTH_CODE_REQUIRED.getCode()) {
-            return;
-        } else if (code == CodingNetOpenAPICodeMsg.LOGIN_EXPIRED.getCode()) {
-            CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg codingNetOpenAPICodeMsg = (CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg) fromJson(jsonElement, CodingNetOpenAPICodeMsg.LOGIN_EXPIRED.getClazz());
-            throw new CodingNetTwoFactorAuthenticationException(codingNetOpenAPICodeMsg.getMessage());
-        } else if (code != 0) {
+        CodingNetMetrics.recordBusinessCode(code);
+        checkCodingNetCode(code, jsonElement);
+    }
+
+    private void checkCodingNetCode(int code, @NotNull JsonElement jsonElement) throws IOException {
+        checkCodingNetCode(myAuth, code, jsonElement);
+    }
+
+    /**
+     * @param auth        业务码表示会话失效时清除该账号的会话缓存
+     * @param code
+     * @param jsonElement 完整响应, 只在读取异常信息时解析
+     * @throws IOException
+     */
+    static void checkCodingNetCode(@NotNull CodingNetAuthData auth, int code, @NotNull JsonElement jsonElement) throws IOException {
+        CodingNetRequestTracer.Trace trace = CodingNetRequestTracer.current();
+        if (trace != null) {
+            trace.log(() -> "code " + code + ": " + CodingNetRequestTracer.excerpt(jsonElement));
+        }
+        if (code == 0) return;
+
+        CodingNetOpenAPICodeMsg codeMsg = CodingNetOpenAPICodeMsg.forCode(code);
+        if (codeMsg == null) {
             throw new CodingNetAuthenticationException();
         }
+        if (codeMsg.isSessionExpired()) {
+            //--会话已失效, 下次执行任务时重新登录
+            CodingNetSessionCache.invalidate(auth);
+        }
+        switch (codeMsg.getReaction()) {
+            case AUTHENTICATION:
+                throw new CodingNetAuthenticationException(() -> getCodeMessage(codeMsg, jsonElement), codeMsg.isSessionExpired());
+            case TWO_FACTOR:
+                throw new CodingNetTwoFactorAuthenticationException(() -> getCodeMessage(codeMsg, jsonElement), codeMsg.isSessionExpired());
+            default:
+        }
+    }
+
+    /**
+     * 只在读取异常消息时才解析错误内容
+     */
+    @Nullable
+    private static String getCodeMessage(@NotNull CodingNetOpenAPICodeMsg codeMsg, @NotNull JsonElement jsonElement) {
+        try {
+            CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg message =
+                    (CodingNetOpenAPICodeMsg.ICodingNetOpenAPICodeMsg) fromJson(jsonElement, codeMsg.getClazz());
+            return message.getMessage();
+        } catch (IOException | RuntimeException e) {
+            LOG.info("Can't decode message of code " + codeMsg.getCode(), e);
+            return null;
+        }
     }
 
     @NotNull
-    private CloseableHttpResponse doREST(@NotNull final String uri,
-                                         @Nullable final String requestBody,
-                                         @NotNull final Collection<Header> headers,
-                                         @NotNull final HttpVerb verb) throws IOException {
+    private HttpRequestBase createRequest(@NotNull final String uri,
+                                          @Nullable final String requestBody,
+                                          @NotNull final Collection<Header> headers,
+                                          @NotNull final HttpVerb verb) {
         HttpRequestBase request;
         switch (verb) {
             case POST:
@@ -401,12 +579,14 @@ public class CodingNetConnection {
                 throw new IllegalStateException("Unknown HttpVerb: " + verb.toString());
         }
 
+        for (Header header : myAuthHeaders) {
+            request.addHeader(header);
+        }
         for (Header header : headers) {
             request.addHeader(header);
         }
 
-        myRequest = request;
-        return myClient.execute(request);
+        return request;
     }
 
     private static void checkStatusCode(@NotNull CloseableHttpResponse response, @Nullable String body) throws IOException {
@@ -420,6 +600,9 @@ public class CodingNetConnection {
             case HttpStatus.SC_UNAUTHORIZED:
             case HttpStatus.SC_PAYMENT_REQUIRED:
             case HttpStatus.SC_FORBIDDEN:
+                if (code == HttpStatus.SC_FORBIDDEN && isRateLimitExhausted(response)) {
+                    throw getRateLimitException(response);
+                }
                 //noinspection ThrowableResultOfMethodCallIgnored
                 CodingNetStatusCodeException error = getStatusCodeException(response);
 
@@ -430,13 +613,11 @@ public class CodingNetConnection {
 //              throw new CodingNetTwoFactorAuthenticationException(error.getMessage());
 //            }
 //          }
-//        }
-//
-//        if (error.getError() != null && error.getError().containsReasonMessage("API rate limit exceeded")) {
-//          throw new GithubRateLimitExceededException(error.getMessage());
 //        }
 
                 throw new CodingNetAuthenticationException("Request response: " + error.getMessage());
+            case SC_TOO_MANY_REQUESTS:
+                throw getRateLimitException(response);
             case HttpStatus.SC_BAD_REQUEST:
             case HttpStatus.SC_UNPROCESSABLE_ENTITY:
                 LOG.info("body message:" + body);
@@ -446,6 +627,18 @@ public class CodingNetConnection {
         }
     }
 
+    private static boolean isRateLimitExhausted(@NotNull CloseableHttpResponse response) {
+        Header remaining = response.getFirstHeader("X-RateLimit-Remaining");
+        return remaining != null && "0".equals(remaining.getValue().trim());
+    }
+
+    @NotNull
+    private static CodingNetRateLimitExceededException getRateLimitException(@NotNull CloseableHttpResponse response) {
+        long retryAfter = CodingNetRequestBudget.getRetryAfterMillis(response.getAllHeaders());
+        String message = "API rate limit exceeded" + (retryAfter < 0 ? "" : ", retry in " + Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryAfter)) + " s");
+        return new CodingNetRateLimitExceededException(message, retryAfter);
+    }
+
     @NotNull
     private static CodingNetStatusCodeException getStatusCodeException(@NotNull CloseableHttpResponse response) {
         StatusLine statusLine = response.getStatusLine();
@@ -463,7 +656,7 @@ public class CodingNetConnection {
     }
 
     @NotNull
-    private static JsonElement parseResponse(@NotNull InputStream codingResponse) throws IOException {
+    static JsonElement parseResponse(@NotNull InputStream codingResponse) throws IOException {
         Reader reader = new InputStreamReader(codingResponse, CharsetToolkit.UTF8_CHARSET);
         try {
             return new JsonParser().parse(reader);
@@ -475,6 +668,12 @@ public class CodingNetConnection {
     }
 
     public static class PagedRequest<T> {
+        private static final int MAX_PARALLEL_PAGES = 4;
+        private static final long PAGE_WAIT_INTERVAL = 100;
+        private static final int PIPELINE_DEPTH = 2;
+        private static final ExecutorService ourPageExecutor =
+                AppExecutorUtil.createBoundedApplicationPoolExecutor("CodingNet Paging", MAX_PARALLEL_PAGES);
+
         @NotNull
         private String myPath;
         @NotNull
@@ -487,6 +686,8 @@ public class CodingNetConnection {
         private boolean myFirstRequest = true;
         @Nullable
         private String myNextPage;
+        @Nullable
+        private CodingNetEnvelopeDecoder.Page<T> myLastPage;
 
         public PagedRequest(@NotNull String path,
                             @NotNull Class<T> result,
@@ -500,65 +701,331 @@ public class CodingNetConnection {
 
         @NotNull
         public List<T> next(@NotNull CodingNetConnection connection) throws IOException {
-            String url;
+            String url = myFirstRequest ? getRequestUrl(connection.getHost(), myPath) : myNextPage;
+            if (url == null) throw new NoSuchElementException();
+
+            CodingNetEnvelopeDecoder.Page<T> page = requestPage(connection, url);
+            List<T> items = getItems(page);
+            //--成功后才前进, 失败时再次调用从同一页继续
+            myFirstRequest = false;
+            myNextPage = page.getNextPage();
+            myLastPage = page;
+            return items;
+        }
+
+        public boolean hasNext() {
+            return myFirstRequest || myNextPage != null;
+        }
+
+        /**
+         * 惰性的分页数据流, 只有消费到当前页末尾时才请求下一页, findFirst/limit/anyMatch等短路操作不会下载多余的分页
+         * <p>
+         * 网络错误以{@link UncheckedIOException}抛出, 原始异常为其cause
+         *
+         * @param connection
+         * @return
+         */
+        @NotNull
+        public Stream<T> stream(@NotNull CodingNetConnection connection) {
+            return StreamSupport.stream(new PageSpliterator(connection), false);
+        }
+
+        @NotNull
+        public List<T> getAll(@NotNull CodingNetConnection connection) throws IOException {
+            ProgressIndicator indicator = ApplicationManager.getApplication() == null ? null : ProgressManager.getInstance().getProgressIndicator();
+            return getAll(connection, indicator);
+        }
+
+        /**
+         * 获取全部分页数据
+         * <p>
+         * 首页响应带有 totalPage (或 totalRow 与 pageSize) 时, 其余分页按页码并发请求, 并发数受限, 结果按页码顺序合并;
+         * 缺少分页元数据时退回到按Link逐页请求.
+         *
+         * @param connection
+         * @param indicator  取消时中止所有未完成的分页请求
+         * @return
+         * @throws IOException
+         */
+        @NotNull
+        public List<T> getAll(@NotNull CodingNetConnection connection, @Nullable ProgressIndicator indicator) throws IOException {
+            List<T> result = new ArrayList<T>();
             if (myFirstRequest) {
-                url = getRequestUrl(connection.getHost(), myPath);
-                myFirstRequest = false;
-            } else {
-                if (myNextPage == null) throw new NoSuchElementException();
-                url = myNextPage;
-                myNextPage = null;
+                checkCanceled(connection, indicator);
+                result.addAll(next(connection));
+
+                int totalPage = getTotalPage(myLastPage);
+                if (totalPage > 1 && myLastPage.getPage() <= 1) {
+                    result.addAll(fetchRemainingPages(connection, indicator, totalPage));
+                    myNextPage = null;
+                    return result;
+                }
             }
 
-            ResponsePage response = connection.doRequest(url, null, myHeaders, HttpVerb.GET);
+            if (hasNext()) {
+                processAll(connection, indicator, result::addAll);
+            }
+            return result;
+        }
 
-            if (response.getJsonElement() == null) {
-                throw new CodingNetConfusingException("Empty response");
+        /**
+         * 按Link逐页获取剩余数据, 每解码完一页就交给consumer
+         * <p>
+         * 下载与解码流水线进行: 后台线程下载下一页的原始响应放入有界队列, 当前线程同时解码上一页,
+         * 内存中同时存在的原始分页不超过{@link #PIPELINE_DEPTH} + 1个.
+         * 中途出错时已交付的分页不受影响, 可以从失败的分页继续调用.
+         *
+         * @param connection
+         * @param indicator
+         * @param consumer   在调用线程上按顺序接收每一页的数据
+         * @throws IOException
+         */
+        public void processAll(@NotNull final CodingNetConnection connection,
+                               @Nullable ProgressIndicator indicator,
+                               @NotNull Consumer<? super List<T>> consumer) throws IOException {
+            final String startUrl = myFirstRequest ? getRequestUrl(connection.getHost(), myPath) : myNextPage;
+            if (startUrl == null) return;
+
+            final BlockingQueue<RawPage> queue = new ArrayBlockingQueue<RawPage>(PIPELINE_DEPTH);
+            final AtomicBoolean stopped = new AtomicBoolean();
+            //--下载在子连接上进行, 结束时中止它即可打断正在进行的下载, 不影响调用方的连接
+            final CodingNetConnection downloads = connection.fork();
+            Future<?> producer = ourPageExecutor.submit(() -> downloadPages(downloads, startUrl, queue, stopped));
+            try {
+                while (true) {
+                    checkCanceled(connection, indicator);
+                    RawPage raw;
+                    try {
+                        raw = queue.poll(PAGE_WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        connection.abort();
+                        throw new CodingNetOperationCanceledException("Operation canceled", e);
+                    }
+                    if (raw == null) continue;
+                    if (raw.myError != null) rethrow(raw.myError);
+                    if (raw.myContent == null) break;
+
+                    long decodeStart = System.nanoTime();
+                    CodingNetEnvelopeDecoder.Page<T> page = CodingNetEnvelopeDecoder.decodePage(new ByteArrayInputStream(raw.myContent),
+                            myRawArray.getComponentType().asSubclass(ICodingNetDataConstructor.class), myResult);
+                    //--下载时只缓存了原始内容, 解码耗时在这里单独记录
+                    CodingNetMetrics.recordDecode(HttpVerb.GET.name(), startUrl, System.nanoTime() - decodeStart, page.getCode());
+                    checkPage(connection, page);
+                    List<T> items = getItems(page);
+                    myFirstRequest = false;
+                    myNextPage = raw.myNextPage;
+                    myLastPage = page;
+                    consumer.consume(items);
+                }
+            } finally {
+                stopped.set(true);
+                producer.cancel(true);
+                downloads.abort();
+                downloads.close();
             }
+        }
 
-            //--Coding返回Json对象不是JSONArray,守护返回
-            if (response.getJsonElement().isJsonArray()) {
-                throw new CodingNetJsonException("Wrong json type: expected JsonArray", new Exception(response.getJsonElement().toString()));
+        /**
+         * 流水线的下载端, 只读取原始字节和Link, 解码交给调用线程
+         */
+        private void downloadPages(@NotNull CodingNetConnection connection,
+                                   @NotNull String startUrl,
+                                   @NotNull BlockingQueue<RawPage> queue,
+                                   @NotNull AtomicBoolean stopped) {
+            RawPage last;
+            try {
+                String url = startUrl;
+                while (url != null && !stopped.get()) {
+                    RawPage raw = connection.doRequest(url, null, myHeaders, HttpVerb.GET, (content, next, headers) -> {
+                        if (content == null) {
+                            throw new CodingNetConfusingException("Empty response");
+                        }
+                        //--这里只复制字节, 解码耗时由processAll记录
+                        CodingNetMetrics.skipDecode();
+                        return new RawPage(FileUtil.loadBytes(content), next, null);
+                    });
+                    if (!offer(queue, raw, stopped)) return;
+                    url = raw.myNextPage;
+                }
+                last = RawPage.END;
+            } catch (Throwable e) {
+                last = new RawPage(null, null, e);
             }
+            offer(queue, last, stopped);
+        }
 
-            myNextPage = response.getNextPage();
+        private static boolean offer(@NotNull BlockingQueue<RawPage> queue, @NotNull RawPage page, @NotNull AtomicBoolean stopped) {
+            try {
+                while (!stopped.get()) {
+                    if (queue.offer(page, PAGE_WAIT_INTERVAL, TimeUnit.MILLISECONDS)) return true;
+                }
+            } catch (InterruptedException ignore) {
+            }
+            return false;
+        }
 
-            List<T> result = new ArrayList<T>();
-            JsonElement jsonElement = response.getJsonElement().getAsJsonObject().get("data").getAsJsonObject().get("list");
-            if (!jsonElement.isJsonArray()) {
-                throw new CodingNetJsonException("Wrong json type: expected JsonArray", new Exception(response.getJsonElement().toString()));
+        private static void rethrow(@NotNull Throwable e) throws IOException {
+            if (e instanceof IOException) throw (IOException) e;
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            if (e instanceof Error) throw (Error) e;
+            throw new IOException(e);
+        }
+
+        @NotNull
+        private List<T> fetchRemainingPages(@NotNull final CodingNetConnection connection,
+                                            @Nullable ProgressIndicator indicator,
+                                            int totalPage) throws IOException {
+            final String firstUrl = getRequestUrl(connection.getHost(), myPath);
+            //--并发的分页请求放在子连接上, 出错时只中止这一组请求, 不影响调用方的连接
+            final CodingNetConnection pages = connection.fork();
+            List<Future<List<T>>> futures = new ArrayList<Future<List<T>>>(totalPage - 1);
+            boolean completed = false;
+            try {
+                for (int i = 2; i <= totalPage; i++) {
+                    final String url = firstUrl + (firstUrl.indexOf('?') == -1 ? '?' : '&') + "page=" + i;
+                    futures.add(ourPageExecutor.submit(() -> getItems(requestPage(pages, url))));
+                }
+
+                List<T> result = new ArrayList<T>();
+                for (Future<List<T>> future : futures) {
+                    result.addAll(waitForPage(connection, indicator, future));
+                }
+                completed = true;
+                return result;
+            } finally {
+                //--出错或取消时不再等待其余分页
+                if (!completed) pages.abort();
+                for (Future<List<T>> future : futures) {
+                    future.cancel(true);
+                }
+                pages.close();
             }
-            for (ICodingNetDataConstructor raw : fromJson(jsonElement, myRawArray)) {
-                result.add(createDataFromRaw(raw, myResult));
+        }
+
+        @NotNull
+        private static <T> List<T> waitForPage(@NotNull CodingNetConnection connection,
+                                               @Nullable ProgressIndicator indicator,
+                                               @NotNull Future<List<T>> future) throws IOException {
+            while (true) {
+                checkCanceled(connection, indicator);
+                try {
+                    return future.get(PAGE_WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ignore) {
+                } catch (InterruptedException e) {
+                    connection.abort();
+                    throw new CodingNetOperationCanceledException("Operation canceled", e);
+                } catch (ExecutionException e) {
+                    rethrow(e.getCause());
+                }
             }
-            return result;
         }
 
-        public boolean hasNext() {
-            return myFirstRequest || myNextPage != null;
+        private static void checkCanceled(@NotNull CodingNetConnection connection, @Nullable ProgressIndicator indicator)
+                throws CodingNetOperationCanceledException {
+            if (indicator != null && indicator.isCanceled()) {
+                connection.abort();
+                throw new CodingNetOperationCanceledException();
+            }
+        }
+
+        private static int getTotalPage(@Nullable CodingNetEnvelopeDecoder.Page<?> page) {
+            if (page == null) return CodingNetEnvelopeDecoder.Page.UNKNOWN;
+            if (page.getTotalPage() != CodingNetEnvelopeDecoder.Page.UNKNOWN) return page.getTotalPage();
+            if (page.getTotalRow() >= 0 && page.getPageSize() > 0) {
+                return (page.getTotalRow() + page.getPageSize() - 1) / page.getPageSize();
+            }
+            return CodingNetEnvelopeDecoder.Page.UNKNOWN;
         }
 
         @NotNull
-        public List<T> getAll(@NotNull CodingNetConnection connection) throws IOException {
-            List<T> result = new ArrayList<T>();
-            while (hasNext()) {
-                result.addAll(next(connection));
+        private CodingNetEnvelopeDecoder.Page<T> requestPage(@NotNull CodingNetConnection connection,
+                                                             @NotNull String url) throws IOException {
+            //--列表元素在响应流上直接解码, 不再构建中间的JsonElement树
+            String kind = "page:" + myRawArray.getName() + ":" + myResult.getName();
+            CodingNetEnvelopeDecoder.Page<T> page = connection.doSharedRequest(url, myHeaders, kind, (content, next, headers) -> {
+                if (content == null) {
+                    throw new CodingNetConfusingException("Empty response");
+                }
+                CodingNetEnvelopeDecoder.Page<T> decoded =
+                        CodingNetEnvelopeDecoder.decodePage(content, myRawArray.getComponentType().asSubclass(ICodingNetDataConstructor.class), myResult);
+                decoded.setNextPage(next);
+                //--交换还未结束, 业务码记在本次请求的统计上
+                CodingNetMetrics.recordBusinessCode(decoded.getCode());
+                return decoded;
+            }, CodingNetEnvelopeDecoder.Page::copy);
+
+            checkPage(connection, page);
+            return page;
+        }
+
+        private static void checkPage(@NotNull CodingNetConnection connection, @NotNull CodingNetEnvelopeDecoder.Page<?> page)
+                throws IOException {
+            //--守护CodingNet返回的业务状态码, 统计已在解码时记录
+            if (page.getCode() != 0) {
+                connection.checkCodingNetCode(page.getCode(), page.getEnvelope());
+            }
+        }
+
+        @NotNull
+        private static <T> List<T> getItems(@NotNull CodingNetEnvelopeDecoder.Page<T> page) throws CodingNetJsonException {
+            List<T> result = page.getItems();
+            if (result == null) {
+                throw new CodingNetJsonException("Wrong json type: expected JsonArray");
             }
             return result;
         }
-    }
+        private class PageSpliterator extends Spliterators.AbstractSpliterator<T> {
+            @NotNull
+            private final CodingNetConnection myConnection;
+            @NotNull
+            private Iterator<T> myCurrent = Collections.emptyIterator();
+
+            private PageSpliterator(@NotNull CodingNetConnection connection) {
+                super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+                myConnection = connection;
+            }
 
-    private ResponsePage createResponse(@NotNull CloseableHttpResponse response) throws CodingNetOperationCanceledException {
-        if (myAborted) throw new CodingNetOperationCanceledException();
+            @Override
+            public boolean tryAdvance(java.util.function.Consumer<? super T> action) {
+                while (!myCurrent.hasNext()) {
+                    if (!hasNext()) return false;
+                    try {
+                        myCurrent = next(myConnection).iterator();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                action.accept(myCurrent.next());
+                return true;
+            }
+        }
 
-        return new ResponsePage(null, null, response.getAllHeaders());
+        /**
+         * 尚未解码的一页响应, myContent为null表示分页结束或出错
+         */
+        private static final class RawPage {
+            private static final RawPage END = new RawPage(null, null, null);
+
+            @Nullable
+            private final byte[] myContent;
+            @Nullable
+            private final String myNextPage;
+            @Nullable
+            private final Throwable myError;
+
+            private RawPage(@Nullable byte[] content, @Nullable String nextPage, @Nullable Throwable error) {
+                myContent = content;
+                myNextPage = nextPage;
+                myError = error;
+            }
+        }
     }
 
-    private ResponsePage createResponse(@NotNull JsonElement ret, @Nullable String path, @NotNull CloseableHttpResponse response)
-            throws CodingNetOperationCanceledException {
-        if (myAborted) throw new CodingNetOperationCanceledException();
-
-        return new ResponsePage(ret, path, response.getAllHeaders());
+    /**
+     * 响应体解码器, content在响应没有实体时为null
+     */
+    private interface BodyDecoder<R> {
+        R decode(@Nullable InputStream content, @Nullable String nextPage, @NotNull Header[] headers) throws IOException;
     }
 
     public static class ResponsePage {
@@ -589,16 +1056,13 @@ public class CodingNetConnection {
         public Header[] getHeaders() {
             return myHeaders;
         }
-    }
 
-    private static class PreemptiveBasicAuthInterceptor implements HttpRequestInterceptor {
-        @Override
-        public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
-            CredentialsProvider provider = (CredentialsProvider) context.getAttribute(HttpClientContext.CREDS_PROVIDER);
-            Credentials credentials = provider.getCredentials(AuthScope.ANY);
-            if (credentials != null) {
-                request.addHeader(new BasicScheme(Consts.UTF_8).authenticate(credentials, request, context));
-            }
+        /**
+         * 合并请求时每个调用方拿到自己的副本
+         */
+        @NotNull
+        ResponsePage copy() {
+            return new ResponsePage(myResponse == null ? null : myResponse.deepCopy(), myNextPage, myHeaders.clone());
         }
     }
 }
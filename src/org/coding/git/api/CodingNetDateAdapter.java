@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * API时间字段的解析器, 无状态, 可以在多个线程中同时使用
+ * <p>
+ * 支持:
+ * <ul>
+ * <li>ISO-8601: {@code 2016-01-02T03:04:05Z}, 可带毫秒和时区偏移({@code +08:00}/{@code +0800}), 只有日期时按UTC零点处理</li>
+ * <li>毫秒时间戳, JSON数字或数字字符串</li>
+ * </ul>
+ * 直接按字符计算时间, 不使用{@link java.text.SimpleDateFormat}, 除结果Date外不分配对象.
+ * 输出格式为{@code yyyy-MM-dd'T'HH:mm:ss'Z'}(UTC).
+ *
+ * @author robin
+ */
+final class CodingNetDateAdapter extends TypeAdapter<Date> {
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    @Override
+    public void write(@NotNull JsonWriter out, @Nullable Date value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(format(value.getTime()));
+    }
+
+    @Override
+    public Date read(@NotNull JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.NUMBER) {
+            return new Date(in.nextLong());
+        }
+        String value = in.nextString();
+        if (value.isEmpty()) {
+            return null;
+        }
+        return new Date(parse(value));
+    }
+
+    /**
+     * @param value ISO-8601时间或毫秒时间戳
+     * @return 毫秒时间戳
+     * @throws JsonSyntaxException 格式不正确
+     */
+    static long parse(@NotNull String value) {
+        int length = value.length();
+        if (length == 0) {
+            throw invalid(value);
+        }
+        if (isEpoch(value)) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new JsonSyntaxException("Invalid timestamp: " + value, e);
+            }
+        }
+
+        //--yyyy-MM-dd
+        if (length < 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            throw invalid(value);
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 7);
+        int day = digits(value, 8, 10);
+        if (month < 1 || month > 12 || day < 1 || day > 31) {
+            throw invalid(value);
+        }
+        long millis = daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+        if (length == 10) {
+            return millis;
+        }
+
+        //--THH:mm[:ss[.SSS]]
+        char separator = value.charAt(10);
+        if ((separator != 'T' && separator != ' ') || length < 16 || value.charAt(13) != ':') {
+            throw invalid(value);
+        }
+        int hour = digits(value, 11, 13);
+        int minute = digits(value, 14, 16);
+        int second = 0;
+        int pos = 16;
+        if (pos < length && value.charAt(pos) == ':') {
+            second = digits(value, pos + 1, pos + 3);
+            pos += 3;
+        }
+        int fraction = 0;
+        if (pos < length && value.charAt(pos) == '.') {
+            int start = ++pos;
+            while (pos < length && isDigit(value.charAt(pos))) {
+                //--只保留到毫秒
+                if (pos - start < 3) fraction = fraction * 10 + (value.charAt(pos) - '0');
+                pos++;
+            }
+            if (pos == start) throw invalid(value);
+            for (int i = Math.min(pos - start, 3); i < 3; i++) {
+                fraction *= 10;
+            }
+        }
+        //--允许闰秒60
+        if (hour > 23 || minute > 59 || second > 60) {
+            throw invalid(value);
+        }
+        millis += ((hour * 60L + minute) * 60 + second) * 1000 + fraction;
+
+        //--时区, 缺省为UTC
+        if (pos == length) {
+            return millis;
+        }
+        char zone = value.charAt(pos);
+        if (zone == 'Z' && pos + 1 == length) {
+            return millis;
+        }
+        if (zone != '+' && zone != '-') {
+            throw invalid(value);
+        }
+        int offsetHours = digits(value, pos + 1, pos + 3);
+        pos += 3;
+        int offsetMinutes = 0;
+        if (pos < length) {
+            if (value.charAt(pos) == ':') pos++;
+            offsetMinutes = digits(value, pos, pos + 2);
+            pos += 2;
+        }
+        if (pos != length || offsetHours > 23 || offsetMinutes > 59) {
+            throw invalid(value);
+        }
+        long offset = (offsetHours * 60L + offsetMinutes) * 60 * 1000;
+        return zone == '+' ? millis - offset : millis + offset;
+    }
+
+    @NotNull
+    static String format(long millis) {
+        long days = Math.floorDiv(millis, MILLIS_PER_DAY);
+        int secondOfDay = (int) (Math.floorMod(millis, MILLIS_PER_DAY) / 1000);
+
+        //--civil_from_days, 见daysFromCivil
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        char[] chars = new char[20];
+        pad(chars, 0, year, 4);
+        chars[4] = '-';
+        pad(chars, 5, month, 2);
+        chars[7] = '-';
+        pad(chars, 8, day, 2);
+        chars[10] = 'T';
+        pad(chars, 11, secondOfDay / 3600, 2);
+        chars[13] = ':';
+        pad(chars, 14, secondOfDay / 60 % 60, 2);
+        chars[16] = ':';
+        pad(chars, 17, secondOfDay % 60, 2);
+        chars[19] = 'Z';
+        return new String(chars);
+    }
+
+    /**
+     * 公历日期到1970-01-01的天数, 算法来自Howard Hinnant的chrono-Compatible Low-Level Date Algorithms
+     */
+    private static long daysFromCivil(long year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yoe = year - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static boolean isEpoch(@NotNull String value) {
+        int start = value.charAt(0) == '-' ? 1 : 0;
+        if (start == value.length()) return false;
+        for (int i = start; i < value.length(); i++) {
+            if (!isDigit(value.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static int digits(@NotNull String value, int from, int to) {
+        if (to > value.length()) throw invalid(value);
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) throw invalid(value);
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static void pad(@NotNull char[] chars, int offset, long value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    @NotNull
+    private static JsonSyntaxException invalid(@NotNull String value) {
+        return new JsonSyntaxException("Invalid date: " + value);
+    }
+}
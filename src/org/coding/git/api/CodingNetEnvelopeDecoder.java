@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import org.coding.git.exceptions.CodingNetJsonException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.coding.git.api.CodingNetApiUtil.createDataFromRaw;
+import static org.coding.git.api.CodingNetApiUtil.fromJson;
+
+/**
+ * OpenAPI分页响应的流式解码器
+ * <p>
+ * 直接在响应流上用{@link JsonReader}读取 {code, msg, data} 信封, data.list 中的元素逐个解码为模型对象,
+ * 不再先构建整棵JsonElement树再二次转换, 一页数据只在内存中存在一份.
+ * 常用的模型由{@link CodingNetModelReaders}直接构造, 不经过*Raw对象.
+ *
+ * @author robin
+ */
+final class CodingNetEnvelopeDecoder {
+    private CodingNetEnvelopeDecoder() {
+    }
+
+    /**
+     * 解码一页列表数据, 输入流由本方法关闭
+     *
+     * @param content     响应体
+     * @param rawClass    列表元素对应的*Raw类
+     * @param resultClass 需要的模型类
+     * @return
+     * @throws IOException
+     */
+    @NotNull
+    static <T> Page<T> decodePage(@NotNull InputStream content,
+                                  @NotNull Class<? extends ICodingNetDataConstructor> rawClass,
+                                  @NotNull Class<T> resultClass) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(content, CharsetToolkit.UTF8_CHARSET));
+        try {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new CodingNetJsonException("Wrong json type: expected JsonObject, got " + reader.peek());
+            }
+
+            Page<T> page = new Page<T>();
+            //--data出现在code之前时先原样保留, 确认成功后再解码
+            JsonElement deferredData = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("code".equals(name)) {
+                    page.myCode = reader.nextInt();
+                } else if ("msg".equals(name)) {
+                    page.myMessage = new JsonParser().parse(reader);
+                } else if ("data".equals(name) && page.myCode == null) {
+                    deferredData = new JsonParser().parse(reader);
+                } else if ("data".equals(name) && page.myCode == 0 && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    readData(reader, page, rawClass, resultClass);
+                } else {
+                    //--失败响应的data格式不确定, 跳过后由业务码检查抛出真正的错误
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (page.myCode == null) {
+                throw new CodingNetJsonException("Missing business code in Coding response");
+            }
+            if (page.myCode == 0 && deferredData != null && deferredData.isJsonObject()) {
+                readData(new JsonReader(new StringReader(deferredData.toString())), page, rawClass, resultClass);
+            }
+            return page;
+        } catch (JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw new CodingNetJsonException("Couldn't parse Coding response", e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static <T> void readData(@NotNull JsonReader reader,
+                                     @NotNull Page<T> page,
+                                     @NotNull Class<? extends ICodingNetDataConstructor> rawClass,
+                                     @NotNull Class<T> resultClass) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("list".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                //--有直接读取器的模型不再创建*Raw中间对象
+                CodingNetModelReaders.ModelReader<T> modelReader = CodingNetModelReaders.forModel(resultClass);
+                List<T> items = new ArrayList<T>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    items.add(modelReader != null ? modelReader.read(reader) : createDataFromRaw(fromJson(reader, rawClass), resultClass));
+                }
+                reader.endArray();
+                page.myItems = items;
+            } else if ("page".equals(name)) {
+                page.myPage = nextIntOrDefault(reader);
+            } else if ("pageSize".equals(name)) {
+                page.myPageSize = nextIntOrDefault(reader);
+            } else if ("totalPage".equals(name)) {
+                page.myTotalPage = nextIntOrDefault(reader);
+            } else if ("totalRow".equals(name)) {
+                page.myTotalRow = nextIntOrDefault(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static int nextIntOrDefault(@NotNull JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING) {
+            return reader.nextInt();
+        }
+        reader.skipValue();
+        return Page.UNKNOWN;
+    }
+
+    /**
+     * 一页解码结果: 业务码、错误信息以及分页元数据
+     */
+    static final class Page<T> {
+        static final int UNKNOWN = -1;
+
+        @Nullable
+        private Integer myCode;
+        @Nullable
+        private JsonElement myMessage;
+        @Nullable
+        private List<T> myItems;
+
+        private int myPage = UNKNOWN;
+        private int myPageSize = UNKNOWN;
+        private int myTotalPage = UNKNOWN;
+        private int myTotalRow = UNKNOWN;
+
+        @Nullable
+        private String myNextPage;
+
+        int getCode() {
+            return myCode == null ? 0 : myCode;
+        }
+
+        /**
+         * 仅包含 code 与 msg 的信封, 供业务码检查构造异常信息
+         */
+        @NotNull
+        JsonObject getEnvelope() {
+            JsonObject envelope = new JsonObject();
+            envelope.add("code", new JsonPrimitive(getCode()));
+            if (myMessage != null) {
+                envelope.add("msg", myMessage);
+            }
+            return envelope;
+        }
+
+        /**
+         * @return data.list 的内容, 响应中没有列表时返回 null
+         */
+        @Nullable
+        List<T> getItems() {
+            return myItems;
+        }
+
+        int getPage() {
+            return myPage;
+        }
+
+        int getPageSize() {
+            return myPageSize;
+        }
+
+        int getTotalPage() {
+            return myTotalPage;
+        }
+
+        int getTotalRow() {
+            return myTotalRow;
+        }
+
+        /**
+         * @return Link响应头中的下一页地址
+         */
+        @Nullable
+        String getNextPage() {
+            return myNextPage;
+        }
+
+        void setNextPage(@Nullable String nextPage) {
+            myNextPage = nextPage;
+        }
+
+        /**
+         * 合并请求时每个调用方拿到自己的副本, 列表元素本身不可变, 可以共享
+         */
+        @NotNull
+        Page<T> copy() {
+            Page<T> copy = new Page<T>();
+            copy.myCode = myCode;
+            copy.myMessage = myMessage == null ? null : myMessage.deepCopy();
+            copy.myItems = myItems == null ? null : new ArrayList<T>(myItems);
+            copy.myPage = myPage;
+            copy.myPageSize = myPageSize;
+            copy.myTotalPage = myTotalPage;
+            copy.myTotalRow = myTotalRow;
+            copy.myNextPage = myNextPage;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.intellij.concurrency.JobScheduler;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.net.HttpConfigurable;
+import com.intellij.util.net.IdeHttpClientHelpers;
+import com.intellij.util.net.ssl.CertificateManager;
+import org.apache.http.*;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.protocol.HttpContext;
+import org.coding.git.util.CodingNetAuthData;
+import org.coding.git.util.CodingNetSettings;
+import org.coding.git.util.CodingNetUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 应用级共享的HttpClient注册表
+ * <p>
+ * 按 host、认证身份与代理设置复用带连接池的HttpClient, {@link CodingNetConnection} 只借用客户端而不再自己创建与关闭,
+ * 同一账号的连续操作因此可以复用已建立的TCP/TLS连接.
+ *
+ * @author robin
+ */
+public class CodingNetHttpClientRegistry implements Disposable {
+    private static final Logger LOG = CodingNetUtil.LOG;
+
+    private static final HttpRequestInterceptor PREEMPTIVE_BASIC_AUTH = new PreemptiveBasicAuthInterceptor();
+
+    private static final int MAX_CONNECTIONS_TOTAL = 20;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 6;
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+    private static final long KEEP_ALIVE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long IDLE_CONNECTION_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long IDLE_CLIENT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long EVICTION_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
+    private static final ConnectionKeepAliveStrategy KEEP_ALIVE_STRATEGY = (response, context) -> {
+        //--服务端未声明Keep-Alive时不无限期保留连接
+        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        return duration > 0 ? Math.min(duration, KEEP_ALIVE_MILLIS) : KEEP_ALIVE_MILLIS;
+    };
+
+    private final ConcurrentMap<ClientKey, SharedClient> myClients = ContainerUtil.newConcurrentMap();
+
+    private volatile ScheduledFuture<?> myEvictionTask;
+    private volatile boolean myDisposed;
+
+    /**
+     * 没有IDE环境时(如离线的负载测试)使用进程内单独的实例, 此时不读取IDE的代理、证书与超时设置
+     */
+    public static CodingNetHttpClientRegistry getInstance() {
+        if (ApplicationManager.getApplication() == null) {
+            return StandaloneHolder.INSTANCE;
+        }
+        return ServiceManager.getService(CodingNetHttpClientRegistry.class);
+    }
+
+    /**
+     * 用与认证信息匹配的共享客户端执行请求
+     * <p>
+     * 执行期间客户端处于借用状态, 返回后由响应占用的连接保持其不被回收, 调用方关闭响应即归还连接
+     */
+    @NotNull
+    CloseableHttpResponse execute(@NotNull ClientKey key, @NotNull CodingNetAuthData auth, @NotNull HttpUriRequest request)
+            throws IOException {
+        if (myDisposed) {
+            throw new IllegalStateException("Coding.net http client registry is disposed");
+        }
+        //--借用计数与回收在同一个键的compute中判断, 回收不会关闭刚被借出的客户端
+        SharedClient client = myClients.compute(key, (k, existing) -> {
+            SharedClient shared = existing != null ? existing : createClient(auth);
+            shared.myBorrowers.incrementAndGet();
+            shared.touch();
+            return shared;
+        });
+        try {
+            client.seedSessionCookie(auth);
+            ensureEvictionScheduled();
+            return client.myClient.execute(request);
+        } finally {
+            client.myBorrowers.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        myDisposed = true;
+        ScheduledFuture<?> task = myEvictionTask;
+        if (task != null) task.cancel(false);
+
+        for (SharedClient client : myClients.values()) {
+            client.close();
+        }
+        myClients.clear();
+    }
+
+    private void ensureEvictionScheduled() {
+        if (myEvictionTask != null) return;
+        synchronized (this) {
+            if (myEvictionTask != null || myDisposed) return;
+            myEvictionTask = JobScheduler.getScheduler().scheduleWithFixedDelay(this::evictIdle,
+                    EVICTION_PERIOD_MILLIS, EVICTION_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 关闭过期和长时间空闲的连接, 并释放长时间无人借用的客户端
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<ClientKey, SharedClient> entry : myClients.entrySet()) {
+            SharedClient client = entry.getValue();
+            client.myConnectionManager.closeExpiredConnections();
+            client.myConnectionManager.closeIdleConnections(IDLE_CONNECTION_MILLIS, TimeUnit.MILLISECONDS);
+
+            if (!client.isIdle(now)) continue;
+            //--与借用互斥: 只移除此刻仍无人借用的同一个客户端
+            boolean[] evicted = new boolean[1];
+            myClients.computeIfPresent(entry.getKey(), (key, current) -> {
+                if (current != client || !current.isIdle(now)) return current;
+                evicted[0] = true;
+                return null;
+            });
+            if (evicted[0]) {
+                client.close();
+            }
+        }
+    }
+
+    @NotNull
+    private static SharedClient createClient(@NotNull CodingNetAuthData auth) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(createSocketFactoryRegistry());
+        connectionManager.setMaxTotal(MAX_CONNECTIONS_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        connectionManager.setDefaultConnectionConfig(createConnectionConfig());
+
+        BasicCookieStore cookieStore = new BasicCookieStore();
+
+        CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(KEEP_ALIVE_STRATEGY)
+                .setDefaultRequestConfig(createRequestConfig(auth))
+                .addInterceptorFirst(PREEMPTIVE_BASIC_AUTH)
+                //--加入cookie
+                .setDefaultCookieStore(cookieStore)
+                .build();
+
+        return new SharedClient(client, connectionManager, cookieStore);
+    }
+
+    @NotNull
+    private static Registry<ConnectionSocketFactory> createSocketFactoryRegistry() {
+        SSLConnectionSocketFactory sslSocketFactory = ApplicationManager.getApplication() == null
+                ? SSLConnectionSocketFactory.getSocketFactory()
+                : new SSLConnectionSocketFactory(CertificateManager.getInstance().getSslContext(), CertificateManager.HOSTNAME_VERIFIER);
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory)
+                .build();
+    }
+
+    @NotNull
+    private static RequestConfig createRequestConfig(@NotNull CodingNetAuthData auth) {
+        RequestConfig.Builder builder = RequestConfig.custom();
+
+        int timeout = getConnectionTimeout();
+        builder
+                .setConnectTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .setSocketTimeout(timeout);
+
+        if (isUseIdeProxy(auth)) {
+            IdeHttpClientHelpers.ApacheHttpClient4.setProxyForUrlIfEnabled(builder, auth.getHost());
+        }
+
+        return builder.build();
+    }
+
+    private static int getConnectionTimeout() {
+        if (ApplicationManager.getApplication() == null) return CodingNetSettings.DEFAULT_CONNECTION_TIMEOUT;
+        return CodingNetSettings.getInstance().getConnectionTimeout();
+    }
+
+    private static boolean isUseIdeProxy(@NotNull CodingNetAuthData auth) {
+        return auth.isUseProxy() && ApplicationManager.getApplication() != null;
+    }
+
+    @NotNull
+    private static ConnectionConfig createConnectionConfig() {
+        return ConnectionConfig.custom()
+                .setCharset(Consts.UTF_8)
+                .build();
+    }
+
+    /**
+     * 共享客户端的键: host、认证身份、代理设置与超时共同决定一个客户端
+     */
+    static final class ClientKey {
+        @NotNull
+        private final String myHost;
+        @NotNull
+        private final String myIdentity;
+        @NotNull
+        private final String myProxy;
+        private final int myTimeout;
+
+        private ClientKey(@NotNull String host, @NotNull String identity, @NotNull String proxy, int timeout) {
+            myHost = host;
+            myIdentity = identity;
+            myProxy = proxy;
+            myTimeout = timeout;
+        }
+
+        @NotNull
+        static ClientKey create(@NotNull CodingNetAuthData auth) {
+            return new ClientKey(auth.getHost(), auth.getIdentity(), getProxyFingerprint(auth), getConnectionTimeout());
+        }
+
+        @NotNull
+        private static String getProxyFingerprint(@NotNull CodingNetAuthData auth) {
+            if (!isUseIdeProxy(auth)) return "";
+            HttpConfigurable proxy = HttpConfigurable.getInstance();
+            if (proxy.USE_PROXY_PAC) return "pac";
+            if (!proxy.USE_HTTP_PROXY) return "direct";
+            return (proxy.PROXY_TYPE_IS_SOCKS ? "socks://" : "http://") + proxy.PROXY_HOST + ":" + proxy.PROXY_PORT;
+        }
+
+        @NotNull
+        String getHost() {
+            return myHost;
+        }
+
+        @NotNull
+        String getIdentity() {
+            return myIdentity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ClientKey)) return false;
+
+            ClientKey key = (ClientKey) o;
+            return myTimeout == key.myTimeout &&
+                    myHost.equals(key.myHost) &&
+                    myIdentity.equals(key.myIdentity) &&
+                    myProxy.equals(key.myProxy);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = myHost.hashCode();
+            result = 31 * result + myIdentity.hashCode();
+            result = 31 * result + myProxy.hashCode();
+            result = 31 * result + myTimeout;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return myIdentity + "@" + myHost;
+        }
+    }
+
+    private static final class StandaloneHolder {
+        private static final CodingNetHttpClientRegistry INSTANCE = new CodingNetHttpClientRegistry();
+    }
+
+    private static final class SharedClient {
+        @NotNull
+        private final CloseableHttpClient myClient;
+        @NotNull
+        private final PoolingHttpClientConnectionManager myConnectionManager;
+        @NotNull
+        private final CookieStore myCookieStore;
+
+        private volatile long myLastUsed = System.currentTimeMillis();
+        //--正在执行请求的调用方数, 连接尚未从连接池借出时也不能回收
+        private final AtomicInteger myBorrowers = new AtomicInteger();
+
+        private SharedClient(@NotNull CloseableHttpClient client,
+                             @NotNull PoolingHttpClientConnectionManager connectionManager,
+                             @NotNull CookieStore cookieStore) {
+            myClient = client;
+            myConnectionManager = connectionManager;
+            myCookieStore = cookieStore;
+        }
+
+        private void touch() {
+            myLastUsed = System.currentTimeMillis();
+        }
+
+        private boolean isIdle(long now) {
+            return now - myLastUsed > IDLE_CLIENT_MILLIS
+                    && myBorrowers.get() == 0
+                    && myConnectionManager.getTotalStats().getLeased() == 0;
+        }
+
+        /**
+         * 仅在还没有会话cookie时写入sid, 之后以服务端Set-Cookie下发的会话为准;
+         * 密码是{@link CodingNetAuthData#getIdentity()}的一部分, 密码变化后使用新的客户端, 不会沿用旧密码的会话
+         */
+        private void seedSessionCookie(@NotNull CodingNetAuthData auth) {
+            CodingNetAuthData.BasicAuth basicAuth = auth.getBasicAuth();
+            if (basicAuth == null || basicAuth.getSid() == null) return;
+
+            synchronized (myCookieStore) {
+                if (findSessionCookie() != null) return;
+
+                BasicClientCookie cookie = new BasicClientCookie("sid", basicAuth.getSid());
+                cookie.setDomain(".coding.net");
+                cookie.setPath("/");
+                cookie.setSecure(true);
+                myCookieStore.addCookie(cookie);
+            }
+        }
+
+        @Nullable
+        private Cookie findSessionCookie() {
+            for (Cookie cookie : myCookieStore.getCookies()) {
+                if ("sid".equals(cookie.getName())) return cookie;
+            }
+            return null;
+        }
+
+        private void close() {
+            try {
+                myClient.close();
+            } catch (IOException e) {
+                LOG.info(e);
+            }
+        }
+    }
+
+    private static class PreemptiveBasicAuthInterceptor implements HttpRequestInterceptor {
+        @Override
+        public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+            CredentialsProvider provider = (CredentialsProvider) context.getAttribute(HttpClientContext.CREDS_PROVIDER);
+            Credentials credentials = provider.getCredentials(AuthScope.ANY);
+            if (credentials != null) {
+                request.addHeader(new BasicScheme(Consts.UTF_8).authenticate(credentials, request, context));
+            }
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.intellij.openapi.diagnostic.Logger;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.util.EntityUtils;
+import org.coding.git.util.CodingNetUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 录制与回放HTTP交换, 让基准测试和接口流程的回归测试可以离线、确定地运行. 默认关闭, 通过系统属性开启:
+ * <ul>
+ * <li>{@code coding.net.http.record=/path/fixtures.jsonl} 把每次请求与响应追加到文件, 每行一条</li>
+ * <li>{@code coding.net.http.replay=/path/fixtures.jsonl} 不访问网络, 按方法和地址返回录制的响应</li>
+ * <li>{@code coding.net.http.replay.timeScale=0} 回放时按录制耗时乘以该系数等待, 默认1即原始耗时, 0不等待</li>
+ * </ul>
+ * 地址只保留路径和查询参数, 回放时不区分host; 同一地址录到多次响应时按顺序循环返回.
+ * 密码、验证码、认证头和会话Cookie的值在录制时替换掉, 回放时请求中的这些值同样不参与匹配.
+ *
+ * @author robin
+ */
+final class CodingNetHttpFixtures {
+    private static final Logger LOG = CodingNetUtil.LOG;
+
+    private static final String REDACTED = "***";
+    private static final Set<String> REDACTED_PARAMETERS = new HashSet<String>(Arrays.asList("password", "code"));
+    private static final Set<String> REDACTED_HEADERS = new HashSet<String>(Arrays.asList("authorization", "cookie", "x-github-otp"));
+    private static final long SLEEP_INTERVAL = 100;
+
+    private static final Gson ourGson = new GsonBuilder().disableHtmlEscaping().create();
+
+    @Nullable
+    private static volatile Recorder ourRecorder = createRecorder();
+    @Nullable
+    private static volatile Replayer ourReplayer = createReplayer();
+
+    private CodingNetHttpFixtures() {
+    }
+
+    interface Transport {
+        @NotNull
+        CloseableHttpResponse execute() throws IOException;
+    }
+
+    /**
+     * @param request
+     * @param requestBody
+     * @param network     真正发出请求, 回放时不调用
+     * @return
+     * @throws IOException
+     */
+    @NotNull
+    static CloseableHttpResponse execute(@NotNull HttpRequestBase request,
+                                         @Nullable String requestBody,
+                                         @NotNull Transport network) throws IOException {
+        Replayer replayer = ourReplayer;
+        if (replayer != null) return replayer.replay(request, requestBody);
+        Recorder recorder = ourRecorder;
+        if (recorder == null) return network.execute();
+        return recorder.record(request, requestBody, network);
+    }
+
+    /**
+     * 开始录制到文件, 已有内容保留, 新的交换追加在后面
+     *
+     * @param file
+     * @throws IOException
+     */
+    static void startRecording(@NotNull File file) throws IOException {
+        stop();
+        ourRecorder = new Recorder(file);
+    }
+
+    /**
+     * @param file
+     * @param timeScale 录制耗时的系数, 0不等待
+     * @throws IOException
+     */
+    static void startReplay(@NotNull File file, double timeScale) throws IOException {
+        stop();
+        ourReplayer = new Replayer(file, timeScale);
+    }
+
+    /**
+     * 结束录制或回放, 恢复正常的网络请求
+     */
+    static void stop() {
+        Recorder recorder = ourRecorder;
+        ourRecorder = null;
+        ourReplayer = null;
+        if (recorder != null) recorder.close();
+    }
+
+    @Nullable
+    private static Recorder createRecorder() {
+        String path = System.getProperty("coding.net.http.record");
+        if (path == null || path.isEmpty()) return null;
+        try {
+            return new Recorder(new File(path));
+        } catch (IOException e) {
+            LOG.warn("Can't record HTTP fixtures to " + path, e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Replayer createReplayer() {
+        String path = System.getProperty("coding.net.http.replay");
+        if (path == null || path.isEmpty()) return null;
+        String timeScale = System.getProperty("coding.net.http.replay.timeScale", "1");
+        try {
+            return new Replayer(new File(path), Double.parseDouble(timeScale));
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid coding.net.http.replay.timeScale: " + timeScale);
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Can't replay HTTP fixtures from " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param verb
+     * @param url         已经过{@link #getUrl(HttpRequestBase)}处理的地址
+     * @param requestBody
+     * @return 录制与回放时匹配用的键
+     */
+    @NotNull
+    private static String getKey(@NotNull String verb, @NotNull String url, @Nullable String requestBody) {
+        return requestBody == null ? verb + " " + url : verb + " " + url + " " + requestBody;
+    }
+
+    @NotNull
+    private static String getUrl(@NotNull HttpRequestBase request) {
+        String uri = request.getURI().toString();
+        int start = uri.indexOf("://");
+        if (start != -1) {
+            start = uri.indexOf('/', start + 3);
+            uri = start == -1 ? "/" : uri.substring(start);
+        }
+        int query = uri.indexOf('?');
+        if (query == -1) return uri;
+
+        StringBuilder result = new StringBuilder(uri.length()).append(uri, 0, query + 1);
+        String[] parameters = uri.substring(query + 1).split("&");
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) result.append('&');
+            String parameter = parameters[i];
+            int eq = parameter.indexOf('=');
+            if (eq != -1 && REDACTED_PARAMETERS.contains(parameter.substring(0, eq))) {
+                result.append(parameter, 0, eq + 1).append(REDACTED);
+            } else {
+                result.append(parameter);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * 一次录制的交换, 对应文件中的一行
+     */
+    private static final class Exchange {
+        private String verb;
+        private String url;
+        private Map<String, String> requestHeaders;
+        private String requestBody;
+        private int status;
+        private String reason;
+        private long millis;
+        private List<String[]> headers;
+        private String body;
+    }
+
+    private static final class Recorder {
+        private final File myFile;
+        private final Writer myWriter;
+
+        private Recorder(@NotNull File file) throws IOException {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Can't create " + parent);
+            }
+            myFile = file;
+            myWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+            LOG.info("Recording HTTP fixtures to " + file);
+        }
+
+        @NotNull
+        private CloseableHttpResponse record(@NotNull HttpRequestBase request,
+                                             @Nullable String requestBody,
+                                             @NotNull Transport network) throws IOException {
+            long start = System.nanoTime();
+            CloseableHttpResponse response = network.execute();
+
+            //--读完响应体后再计时, 回放时连同传输时间一起还原
+            HttpEntity entity = response.getEntity();
+            byte[] content = entity == null ? null : EntityUtils.toByteArray(entity);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (entity != null) {
+                ByteArrayEntity copy = new ByteArrayEntity(content);
+                copy.setContentType(entity.getContentType());
+                response.setEntity(copy);
+            }
+
+            Exchange exchange = new Exchange();
+            exchange.verb = request.getMethod();
+            exchange.url = getUrl(request);
+            exchange.requestHeaders = new LinkedHashMap<String, String>();
+            for (Header header : request.getAllHeaders()) {
+                exchange.requestHeaders.put(header.getName(), redactHeader(header));
+            }
+            exchange.requestBody = requestBody;
+            exchange.status = response.getStatusLine().getStatusCode();
+            exchange.reason = response.getStatusLine().getReasonPhrase();
+            exchange.millis = millis;
+            exchange.headers = new ArrayList<String[]>();
+            for (Header header : response.getAllHeaders()) {
+                exchange.headers.add(new String[]{header.getName(), redactHeader(header)});
+            }
+            exchange.body = content == null ? null : new String(content, StandardCharsets.UTF_8);
+            write(exchange);
+            return response;
+        }
+
+        @NotNull
+        private static String redactHeader(@NotNull Header header) {
+            String name = header.getName().toLowerCase(Locale.ROOT);
+            if (REDACTED_HEADERS.contains(name)) return REDACTED;
+            if (!"set-cookie".equals(name)) return header.getValue();
+            //--只替换cookie的值, 保留名称和属性, 客户端仍能读出会话名
+            String value = header.getValue();
+            int eq = value.indexOf('=');
+            if (eq == -1) return value;
+            int end = value.indexOf(';', eq);
+            return value.substring(0, eq + 1) + REDACTED + (end == -1 ? "" : value.substring(end));
+        }
+
+        private synchronized void write(@NotNull Exchange exchange) {
+            try {
+                myWriter.write(ourGson.toJson(exchange));
+                myWriter.write('\n');
+                myWriter.flush();
+            } catch (IOException e) {
+                LOG.warn("Can't write HTTP fixture to " + myFile, e);
+            }
+        }
+
+        private synchronized void close() {
+            try {
+                myWriter.close();
+            } catch (IOException e) {
+                LOG.info(e);
+            }
+        }
+    }
+
+    private static final class Replayer {
+        private final Map<String, List<Exchange>> myExchanges = new HashMap<String, List<Exchange>>();
+        private final Map<String, AtomicInteger> myPositions = new HashMap<String, AtomicInteger>();
+        private final double myTimeScale;
+
+        private Replayer(@NotNull File file, double timeScale) throws IOException {
+            myTimeScale = timeScale;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                int number = 0;
+                while ((line = reader.readLine()) != null) {
+                    number++;
+                    if (line.trim().isEmpty()) continue;
+                    Exchange exchange;
+                    try {
+                        exchange = ourGson.fromJson(line, Exchange.class);
+                    } catch (JsonParseException e) {
+                        throw new IOException("Invalid HTTP fixture at " + file + ":" + number, e);
+                    }
+                    String key = getKey(exchange.verb, exchange.url, exchange.requestBody);
+                    List<Exchange> exchanges = myExchanges.get(key);
+                    if (exchanges == null) {
+                        exchanges = new ArrayList<Exchange>();
+                        myExchanges.put(key, exchanges);
+                        myPositions.put(key, new AtomicInteger());
+                    }
+                    exchanges.add(exchange);
+                }
+            }
+            LOG.info("Replaying " + myExchanges.size() + " HTTP fixtures from " + file);
+        }
+
+        @NotNull
+        private CloseableHttpResponse replay(@NotNull HttpRequestBase request, @Nullable String requestBody) throws IOException {
+            String key = getKey(request.getMethod(), getUrl(request), requestBody);
+            List<Exchange> exchanges = myExchanges.get(key);
+            if (exchanges == null) {
+                throw new IOException("No recorded response for " + key);
+            }
+            int position = myPositions.get(key).getAndIncrement();
+            Exchange exchange = exchanges.get((position & Integer.MAX_VALUE) % exchanges.size());
+
+            await(request, (long) (exchange.millis * myTimeScale));
+
+            ReplayedResponse response = new ReplayedResponse(exchange.status, exchange.reason);
+            if (exchange.headers != null) {
+                for (String[] header : exchange.headers) {
+                    response.addHeader(header[0], header[1]);
+                }
+            }
+            if (exchange.body != null) {
+                ByteArrayEntity entity = new ByteArrayEntity(exchange.body.getBytes(StandardCharsets.UTF_8));
+                entity.setContentType(response.getFirstHeader("Content-Type"));
+                response.setEntity(entity);
+            }
+            return response;
+        }
+
+        /**
+         * 分段等待, 请求被中止时立即结束
+         */
+        private static void await(@NotNull HttpRequestBase request, long millis) throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            long remaining = millis;
+            while (remaining > 0) {
+                if (request.isAborted()) throw new IOException("Request aborted");
+                try {
+                    Thread.sleep(Math.min(remaining, SLEEP_INTERVAL));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            }
+            if (request.isAborted()) throw new IOException("Request aborted");
+        }
+    }
+
+    private static final class ReplayedResponse extends BasicHttpResponse implements CloseableHttpResponse {
+        private ReplayedResponse(int status, @Nullable String reason) {
+            super(new BasicStatusLine(HttpVersion.HTTP_1_1, status, reason));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
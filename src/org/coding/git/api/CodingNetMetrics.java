@@ -0,0 +1,593 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import org.coding.git.exceptions.CodingNetOperationCanceledException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 进程内的请求统计
+ * <p>
+ * 按"方法 + 归一化路径"分别统计请求数、耗时分布(p50/p95/p99)、接收字节数、JSON解码耗时、HTTP状态码与业务码分布、重试次数和异常.
+ * 路径中的用户名、仓库名、编号等部分替换为占位符, 例如{@code GET /repos/{owner}/{repo}/issues/{id}}.
+ * 统计只做原子累加, 不加锁, 可以在任意线程中调用. 各账号的请求额度见{@link #budgets()}.
+ *
+ * @author robin
+ */
+public class CodingNetMetrics {
+    //--路径中这些段之后的一段是名称
+    private static final Set<String> NAMED_SEGMENTS = new HashSet<String>(Arrays.asList("users", "orgs", "gists", "project", "authorizations"));
+
+    private static final ConcurrentMap<String, Endpoint> ourEndpoints = new ConcurrentHashMap<String, Endpoint>();
+    private static final ThreadLocal<Sample> ourCurrent = new ThreadLocal<Sample>();
+
+    private CodingNetMetrics() {
+    }
+
+    /**
+     * 开始记录一次HTTP交换, 结束时必须调用{@link Sample#finish(Throwable)}
+     *
+     * @param verb
+     * @param uri
+     * @return
+     */
+    @NotNull
+    static Sample start(@NotNull String verb, @NotNull String uri) {
+        return new Sample(getEndpoint(verb, uri));
+    }
+
+    /**
+     * 记录当前线程上正在进行的交换返回的业务码, 不在交换中时忽略
+     *
+     * @param code
+     */
+    static void recordBusinessCode(int code) {
+        Sample sample = ourCurrent.get();
+        if (sample != null) {
+            sample.myBusinessCode = code;
+        }
+    }
+
+    /**
+     * 当前线程上的交换只读取原始内容, 不把读取耗时记为解码; 真正的解码由{@link #recordDecode}单独记录
+     */
+    static void skipDecode() {
+        Sample sample = ourCurrent.get();
+        if (sample != null) {
+            sample.myDecodeSkipped = true;
+        }
+    }
+
+    /**
+     * 记录在交换之外完成的解码, 例如流水线获取的分页
+     *
+     * @param verb
+     * @param uri
+     * @param nanos
+     * @param code  业务码
+     */
+    static void recordDecode(@NotNull String verb, @NotNull String uri, long nanos, int code) {
+        Endpoint endpoint = getEndpoint(verb, uri);
+        endpoint.myDecode.record(nanos);
+        increment(endpoint.myBusinessCodes, code);
+    }
+
+    public static void recordRetry(@NotNull String verb, @NotNull String uri) {
+        getEndpoint(verb, uri).myRetries.incrementAndGet();
+    }
+
+    /**
+     * @return 按请求数从多到少排列
+     */
+    @NotNull
+    public static List<EndpointSnapshot> snapshot() {
+        List<EndpointSnapshot> result = new ArrayList<EndpointSnapshot>();
+        for (Map.Entry<String, Endpoint> entry : ourEndpoints.entrySet()) {
+            result.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        Collections.sort(result, (o1, o2) -> Long.compare(o2.getCount(), o1.getCount()));
+        return result;
+    }
+
+    @Nullable
+    public static EndpointSnapshot snapshot(@NotNull String verb, @NotNull String uri) {
+        String key = verb + " " + normalize(uri);
+        Endpoint endpoint = ourEndpoints.get(key);
+        return endpoint == null ? null : endpoint.snapshot(key);
+    }
+
+    /**
+     * @return 各账号的请求额度与排队情况, 见{@link CodingNetRequestBudget}
+     */
+    @NotNull
+    public static List<BudgetSnapshot> budgets() {
+        return CodingNetRequestBudget.snapshot();
+    }
+
+    public static void reset() {
+        ourEndpoints.clear();
+        CodingNetRequestBudget.resetCounters();
+    }
+
+    /**
+     * @return 适合写入日志的文本表格
+     */
+    @NotNull
+    public static String format() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%-60s %7s %6s %8s %8s %8s %8s %10s %7s%n",
+                "endpoint", "count", "errors", "p50 ms", "p95 ms", "p99 ms", "dec p95", "bytes", "retries"));
+        for (EndpointSnapshot s : snapshot()) {
+            builder.append(String.format("%-60s %7d %6d %8.1f %8.1f %8.1f %8.1f %10d %7d%n",
+                    s.getEndpoint(), s.getCount(), s.getErrorCount(),
+                    toMillis(s.getLatencyP50()), toMillis(s.getLatencyP95()), toMillis(s.getLatencyP99()),
+                    toMillis(s.getDecodeP95()), s.getBytes(), s.getRetries()));
+            builder.append("    status ").append(s.getStatusCodes())
+                    .append(" code ").append(s.getBusinessCodes());
+            if (!s.getErrors().isEmpty()) {
+                builder.append(" errors ").append(s.getErrors());
+            }
+            builder.append(System.lineSeparator());
+        }
+        for (BudgetSnapshot b : budgets()) {
+            builder.append(String.format("budget %s: limit %d, remaining %d, reset in %d ms, blocked %d ms, queued %d%n",
+                    b.getAccount(), b.getLimit(), b.getRemaining(), b.getResetMillis(), b.getBlockedMillis(), b.getQueued()));
+            builder.append(String.format("    interactive %d, background %d, waited %d (%d ms), throttled %d, rejected %d%n",
+                    b.getInteractive(), b.getBackground(), b.getWaits(), b.getWaitMillis(), b.getThrottled(), b.getRejected()));
+        }
+        return builder.toString();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    @NotNull
+    private static Endpoint getEndpoint(@NotNull String verb, @NotNull String uri) {
+        String key = verb + " " + normalize(uri);
+        Endpoint endpoint = ourEndpoints.get(key);
+        if (endpoint == null) {
+            endpoint = new Endpoint();
+            Endpoint existing = ourEndpoints.putIfAbsent(key, endpoint);
+            if (existing != null) endpoint = existing;
+        }
+        return endpoint;
+    }
+
+    /**
+     * 去掉协议、主机和查询参数, 把路径中的名称和编号替换为占位符
+     *
+     * @param uri
+     * @return
+     */
+    @NotNull
+    static String normalize(@NotNull String uri) {
+        int start = uri.indexOf("://");
+        start = start == -1 ? 0 : uri.indexOf('/', start + 3);
+        if (start == -1) return "/";
+        int end = uri.indexOf('?', start);
+        String path = end == -1 ? uri.substring(start) : uri.substring(start, end);
+
+        StringBuilder result = new StringBuilder();
+        String[] segments = path.split("/");
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.isEmpty()) continue;
+            String previous = i > 0 ? segments[i - 1] : "";
+            String beforePrevious = i > 1 ? segments[i - 2] : "";
+            result.append('/');
+            if ("repos".equals(previous)) {
+                result.append("{owner}");
+            } else if ("repos".equals(beforePrevious)) {
+                result.append("{repo}");
+            } else if (NAMED_SEGMENTS.contains(previous)) {
+                result.append("{name}");
+            } else if (isId(segment)) {
+                result.append("{id}");
+            } else {
+                result.append(segment);
+            }
+        }
+        return result.length() == 0 ? "/" : result.toString();
+    }
+
+    //--数字编号或commit sha
+    private static boolean isId(@NotNull String segment) {
+        boolean digits = true;
+        boolean hex = segment.length() >= 7;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            digits &= Character.isDigit(c);
+            hex &= Character.isDigit(c) || (c >= 'a' && c <= 'f');
+        }
+        return digits || hex;
+    }
+
+    private static void increment(@NotNull ConcurrentMap<Integer, AtomicLong> counters, int key) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            counter = new AtomicLong();
+            AtomicLong existing = counters.putIfAbsent(key, counter);
+            if (existing != null) counter = existing;
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * 一次HTTP交换
+     */
+    static final class Sample {
+        private static final int NO_CODE = Integer.MIN_VALUE;
+
+        private final Endpoint myEndpoint;
+        private final long myStart = System.nanoTime();
+        private final Sample myPrevious;
+        private final AtomicLong myBytes = new AtomicLong();
+        private volatile int myStatus = -1;
+        private volatile int myBusinessCode = NO_CODE;
+        private long myDecodeNanos = -1;
+        private volatile boolean myDecodeSkipped;
+
+        private Sample(@NotNull Endpoint endpoint) {
+            myEndpoint = endpoint;
+            myPrevious = ourCurrent.get();
+            ourCurrent.set(this);
+        }
+
+        void setStatus(int status) {
+            myStatus = status;
+        }
+
+        void setDecodeNanos(long nanos) {
+            myDecodeNanos = nanos;
+        }
+
+        /**
+         * @param content
+         * @return 统计读取字节数的响应流
+         */
+        @NotNull
+        InputStream count(@NotNull InputStream content) {
+            return new FilterInputStream(content) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) myBytes.incrementAndGet();
+                    return b;
+                }
+
+                @Override
+                public int read(@NotNull byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) myBytes.addAndGet(n);
+                    return n;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long skipped = super.skip(n);
+                    if (skipped > 0) myBytes.addAndGet(skipped);
+                    return skipped;
+                }
+            };
+        }
+
+        /**
+         * @param error 请求失败时的异常
+         */
+        void finish(@Nullable Throwable error) {
+            if (myPrevious == null) {
+                ourCurrent.remove();
+            } else {
+                ourCurrent.set(myPrevious);
+            }
+
+            Endpoint endpoint = myEndpoint;
+            endpoint.myCount.incrementAndGet();
+            endpoint.myLatency.record(System.nanoTime() - myStart);
+            endpoint.myBytes.addAndGet(myBytes.get());
+            if (myDecodeNanos >= 0 && !myDecodeSkipped) endpoint.myDecode.record(myDecodeNanos);
+            if (myStatus != -1) increment(endpoint.myStatusCodes, myStatus);
+            if (myBusinessCode != NO_CODE) increment(endpoint.myBusinessCodes, myBusinessCode);
+            if (error != null) {
+                String name = error instanceof CodingNetOperationCanceledException ? "canceled" : error.getClass().getSimpleName();
+                AtomicLong counter = endpoint.myErrors.get(name);
+                if (counter == null) {
+                    counter = new AtomicLong();
+                    AtomicLong existing = endpoint.myErrors.putIfAbsent(name, counter);
+                    if (existing != null) counter = existing;
+                }
+                counter.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class Endpoint {
+        private final AtomicLong myCount = new AtomicLong();
+        private final AtomicLong myBytes = new AtomicLong();
+        private final AtomicLong myRetries = new AtomicLong();
+        private final Histogram myLatency = new Histogram();
+        private final Histogram myDecode = new Histogram();
+        private final ConcurrentMap<Integer, AtomicLong> myStatusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+        private final ConcurrentMap<Integer, AtomicLong> myBusinessCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+        private final ConcurrentMap<String, AtomicLong> myErrors = new ConcurrentHashMap<String, AtomicLong>();
+
+        @NotNull
+        private EndpointSnapshot snapshot(@NotNull String key) {
+            return new EndpointSnapshot(key, myCount.get(), myBytes.get(), myRetries.get(),
+                    myLatency.percentile(0.5), myLatency.percentile(0.95), myLatency.percentile(0.99), myDecode.percentile(0.95),
+                    toMap(myStatusCodes), toMap(myBusinessCodes), toMap(myErrors));
+        }
+
+        @NotNull
+        private static <K> Map<K, Long> toMap(@NotNull ConcurrentMap<K, AtomicLong> counters) {
+            Map<K, Long> result = new TreeMap<K, Long>();
+            for (Map.Entry<K, AtomicLong> entry : counters.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().get());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 对数分桶的耗时直方图, 每个2倍区间分4个桶, 百分位取所在桶的上界, 误差不超过19%
+     */
+    private static final class Histogram {
+        private static final int SUB_BUCKETS = 4;
+        //--1us到约1小时
+        private static final long MIN = TimeUnit.MICROSECONDS.toNanos(1);
+        private static final int BUCKETS = 32 * SUB_BUCKETS;
+
+        private final AtomicLongArray myCounts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong myTotal = new AtomicLong();
+
+        void record(long nanos) {
+            myCounts.incrementAndGet(bucket(nanos));
+            myTotal.incrementAndGet();
+        }
+
+        long percentile(double p) {
+            long total = myTotal.get();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * p);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += myCounts.get(i);
+                if (seen >= rank) return upperBound(i);
+            }
+            return upperBound(BUCKETS - 1);
+        }
+
+        private static int bucket(long nanos) {
+            if (nanos <= MIN) return 0;
+            double log = Math.log((double) nanos / MIN) / Math.log(2);
+            return (int) Math.min(BUCKETS - 1, Math.ceil(log * SUB_BUCKETS));
+        }
+
+        private static long upperBound(int bucket) {
+            return (long) (MIN * Math.pow(2, (double) bucket / SUB_BUCKETS));
+        }
+    }
+
+    /**
+     * 某个接口在快照时刻的统计, 耗时单位为纳秒
+     */
+    public static final class EndpointSnapshot {
+        private final String myEndpoint;
+        private final long myCount;
+        private final long myBytes;
+        private final long myRetries;
+        private final long myLatencyP50;
+        private final long myLatencyP95;
+        private final long myLatencyP99;
+        private final long myDecodeP95;
+        private final Map<Integer, Long> myStatusCodes;
+        private final Map<Integer, Long> myBusinessCodes;
+        private final Map<String, Long> myErrors;
+
+        private EndpointSnapshot(@NotNull String endpoint, long count, long bytes, long retries,
+                                 long latencyP50, long latencyP95, long latencyP99, long decodeP95,
+                                 @NotNull Map<Integer, Long> statusCodes,
+                                 @NotNull Map<Integer, Long> businessCodes,
+                                 @NotNull Map<String, Long> errors) {
+            myEndpoint = endpoint;
+            myCount = count;
+            myBytes = bytes;
+            myRetries = retries;
+            myLatencyP50 = latencyP50;
+            myLatencyP95 = latencyP95;
+            myLatencyP99 = latencyP99;
+            myDecodeP95 = decodeP95;
+            myStatusCodes = Collections.unmodifiableMap(statusCodes);
+            myBusinessCodes = Collections.unmodifiableMap(businessCodes);
+            myErrors = Collections.unmodifiableMap(errors);
+        }
+
+        @NotNull
+        public String getEndpoint() {
+            return myEndpoint;
+        }
+
+        public long getCount() {
+            return myCount;
+        }
+
+        public long getBytes() {
+            return myBytes;
+        }
+
+        public long getRetries() {
+            return myRetries;
+        }
+
+        public long getLatencyP50() {
+            return myLatencyP50;
+        }
+
+        public long getLatencyP95() {
+            return myLatencyP95;
+        }
+
+        public long getLatencyP99() {
+            return myLatencyP99;
+        }
+
+        public long getDecodeP95() {
+            return myDecodeP95;
+        }
+
+        public long getErrorCount() {
+            long result = 0;
+            for (Long count : myErrors.values()) {
+                result += count;
+            }
+            return result;
+        }
+
+        @NotNull
+        public Map<Integer, Long> getStatusCodes() {
+            return myStatusCodes;
+        }
+
+        @NotNull
+        public Map<Integer, Long> getBusinessCodes() {
+            return myBusinessCodes;
+        }
+
+        /**
+         * @return 异常类名(取消记为canceled)到次数
+         */
+        @NotNull
+        public Map<String, Long> getErrors() {
+            return myErrors;
+        }
+    }
+
+    /**
+     * 某个账号在快照时刻的请求额度, 服务端未返回的数值为-1
+     */
+    public static final class BudgetSnapshot {
+        private final String myAccount;
+        private final int myLimit;
+        private final int myRemaining;
+        private final long myResetMillis;
+        private final long myBlockedMillis;
+        private final int myQueued;
+        private final long myInteractive;
+        private final long myBackground;
+        private final long myWaits;
+        private final long myWaitMillis;
+        private final long myThrottled;
+        private final long myRejected;
+
+        BudgetSnapshot(@NotNull String account, int limit, int remaining, long resetMillis, long blockedMillis, int queued,
+                       long interactive, long background, long waits, long waitMillis, long throttled, long rejected) {
+            myAccount = account;
+            myLimit = limit;
+            myRemaining = remaining;
+            myResetMillis = resetMillis;
+            myBlockedMillis = blockedMillis;
+            myQueued = queued;
+            myInteractive = interactive;
+            myBackground = background;
+            myWaits = waits;
+            myWaitMillis = waitMillis;
+            myThrottled = throttled;
+            myRejected = rejected;
+        }
+
+        /**
+         * @return host与账号标识
+         */
+        @NotNull
+        public String getAccount() {
+            return myAccount;
+        }
+
+        public int getLimit() {
+            return myLimit;
+        }
+
+        public int getRemaining() {
+            return myRemaining;
+        }
+
+        /**
+         * @return 距额度重置的毫秒数
+         */
+        public long getResetMillis() {
+            return myResetMillis;
+        }
+
+        /**
+         * @return 服务端要求暂停请求的剩余毫秒数
+         */
+        public long getBlockedMillis() {
+            return myBlockedMillis;
+        }
+
+        /**
+         * @return 正在排队的请求数
+         */
+        public int getQueued() {
+            return myQueued;
+        }
+
+        public long getInteractive() {
+            return myInteractive;
+        }
+
+        public long getBackground() {
+            return myBackground;
+        }
+
+        /**
+         * @return 排队等待过的请求数
+         */
+        public long getWaits() {
+            return myWaits;
+        }
+
+        public long getWaitMillis() {
+            return myWaitMillis;
+        }
+
+        /**
+         * @return 服务端返回限流响应的次数
+         */
+        public long getThrottled() {
+            return myThrottled;
+        }
+
+        /**
+         * @return 因等待过久直接失败的请求数
+         */
+        public long getRejected() {
+            return myRejected;
+        }
+    }
+}
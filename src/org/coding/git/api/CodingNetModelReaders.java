@@ -0,0 +1,611 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.coding.git.exceptions.CodingNetJsonException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.coding.git.api.CodingNetRawTypeAdapters.*;
+
+/**
+ * 列表接口的直接解码: 从JSON流中读出字段后直接构造模型对象, 不经过*Raw中间对象
+ * <p>
+ * 校验与{@link ICodingNetDataConstructor#create(Class)}一致: 在那里会因为拆箱或访问嵌套对象而失败的字段,
+ * 这里缺失时同样抛出{@link CodingNetJsonException}, 其余字段允许为null.
+ * 没有对应读取器的模型类仍走*Raw路径.
+ *
+ * @author robin
+ */
+final class CodingNetModelReaders {
+    interface ModelReader<T> {
+        @NotNull
+        T read(@NotNull JsonReader in) throws IOException;
+    }
+
+    private static final Map<Class<?>, ModelReader<?>> ourReaders = new HashMap<Class<?>, ModelReader<?>>();
+
+    static {
+        ourReaders.put(CodingNetRepo.class, CodingNetModelReaders::readRepo);
+        ourReaders.put(CodingNetBranch.class, CodingNetModelReaders::readBranch);
+        ourReaders.put(CodingNetOrg.class, CodingNetModelReaders::readOrg);
+        ourReaders.put(CodingNetIssue.class, CodingNetModelReaders::readIssue);
+        ourReaders.put(CodingNetIssueComment.class, CodingNetModelReaders::readIssueComment);
+        ourReaders.put(CodingNetCommitComment.class, CodingNetModelReaders::readCommitComment);
+        ourReaders.put(CodingNetCommit.class, CodingNetModelReaders::readCommit);
+        ourReaders.put(CodingNetFile.class, CodingNetModelReaders::readFile);
+        ourReaders.put(CodingNetPullRequest.class, CodingNetModelReaders::readPullRequest);
+    }
+
+    private CodingNetModelReaders() {
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    static <T> ModelReader<T> forModel(@NotNull Class<T> resultClass) {
+        return (ModelReader<T>) ourReaders.get(resultClass);
+    }
+
+    @NotNull
+    private static CodingNetRepo readRepo(@NotNull JsonReader in) throws IOException {
+        String httpsUrl = null;
+        beginItem(in);
+        while (in.hasNext()) {
+            if ("https_url".equals(in.nextName())) {
+                httpsUrl = nextString(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetRepo(httpsUrl);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @NotNull
+    private static CodingNetBranch readBranch(@NotNull JsonReader in) throws IOException {
+        String name = null;
+        beginItem(in);
+        while (in.hasNext()) {
+            if ("name".equals(in.nextName())) {
+                name = nextString(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetBranch(name);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @NotNull
+    private static CodingNetOrg readOrg(@NotNull JsonReader in) throws IOException {
+        String login = null;
+        beginItem(in);
+        while (in.hasNext()) {
+            if ("login".equals(in.nextName())) {
+                login = nextString(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetOrg(login);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @Nullable
+    private static CodingNetUser readUser(@NotNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String login = null;
+        String htmlUrl = null;
+        String avatarUrl = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "login":
+                    login = nextString(in);
+                    break;
+                case "html_url":
+                    htmlUrl = nextString(in);
+                    break;
+                case "avatar_url":
+                    avatarUrl = nextString(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetUser(login, htmlUrl, avatarUrl);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @NotNull
+    private static CodingNetIssue readIssue(@NotNull JsonReader in) throws IOException {
+        String htmlUrl = null;
+        Long number = null;
+        String state = null;
+        String title = null;
+        String body = null;
+        CodingNetUser user = null;
+        CodingNetUser assignee = null;
+        Date closedAt = null;
+        Date createdAt = null;
+        Date updatedAt = null;
+        beginItem(in);
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "html_url":
+                    htmlUrl = nextString(in);
+                    break;
+                case "number":
+                    number = nextLong(in);
+                    break;
+                case "state":
+                    state = nextString(in);
+                    break;
+                case "title":
+                    title = nextString(in);
+                    break;
+                case "body":
+                    body = nextString(in);
+                    break;
+                case "user":
+                    user = readUser(in);
+                    break;
+                case "assignee":
+                    assignee = readUser(in);
+                    break;
+                case "closed_at":
+                    closedAt = nextDate(in);
+                    break;
+                case "created_at":
+                    createdAt = nextDate(in);
+                    break;
+                case "updated_at":
+                    updatedAt = nextDate(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetIssue(htmlUrl, require(number, "number"), state, title, body, require(user, "user"), assignee,
+                closedAt, createdAt, updatedAt);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @NotNull
+    private static CodingNetIssueComment readIssueComment(@NotNull JsonReader in) throws IOException {
+        Long id = null;
+        String htmlUrl = null;
+        String bodyHtml = null;
+        Date createdAt = null;
+        Date updatedAt = null;
+        CodingNetUser user = null;
+        beginItem(in);
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = nextLong(in);
+                    break;
+                case "html_url":
+                    htmlUrl = nextString(in);
+                    break;
+                case "body_html":
+                    bodyHtml = nextString(in);
+                    break;
+                case "created_at":
+                    createdAt = nextDate(in);
+                    break;
+                case "updated_at":
+                    updatedAt = nextDate(in);
+                    break;
+                case "user":
+                    user = readUser(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetIssueComment(require(id, "id"), htmlUrl, bodyHtml, createdAt, updatedAt, require(user, "user"));
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @NotNull
+    private static CodingNetCommitComment readCommitComment(@NotNull JsonReader in) throws IOException {
+        String htmlUrl = null;
+        Long id = null;
+        String commitId = null;
+        String path = null;
+        Long position = null;
+        String bodyHtml = null;
+        CodingNetUser user = null;
+        Date createdAt = null;
+        Date updatedAt = null;
+        beginItem(in);
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "html_url":
+                    htmlUrl = nextString(in);
+                    break;
+                case "id":
+                    id = nextLong(in);
+                    break;
+                case "commit_id":
+                    commitId = nextString(in);
+                    break;
+                case "path":
+                    path = nextString(in);
+                    break;
+                case "position":
+                    position = nextLong(in);
+                    break;
+                case "body_html":
+                    bodyHtml = nextString(in);
+                    break;
+                case "user":
+                    user = readUser(in);
+                    break;
+                case "created_at":
+                    createdAt = nextDate(in);
+                    break;
+                case "updated_at":
+                    updatedAt = nextDate(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetCommitComment(htmlUrl, require(id, "id"), commitId, path, require(position, "position"), bodyHtml,
+                require(user, "user"), createdAt, updatedAt);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @NotNull
+    private static CodingNetCommit readCommit(@NotNull JsonReader in) throws IOException {
+        String url = null;
+        String sha = null;
+        CodingNetUser author = null;
+        CodingNetUser committer = null;
+        List<CodingNetCommitSha> parents = null;
+        CodingNetCommit.GitCommit commit = null;
+        beginItem(in);
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "url":
+                    url = nextString(in);
+                    break;
+                case "sha":
+                    sha = nextString(in);
+                    break;
+                case "author":
+                    author = readUser(in);
+                    break;
+                case "committer":
+                    committer = readUser(in);
+                    break;
+                case "parents":
+                    parents = readParents(in);
+                    break;
+                case "commit":
+                    commit = readGitCommit(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetCommit(url, sha, author, committer, require(parents, "parents"), require(commit, "commit"));
+    }
+
+    @Nullable
+    private static List<CodingNetCommitSha> readParents(@NotNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<CodingNetCommitSha> parents = new ArrayList<CodingNetCommitSha>();
+        in.beginArray();
+        while (in.hasNext()) {
+            parents.add(readCommitSha(in));
+        }
+        in.endArray();
+        return parents;
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @NotNull
+    private static CodingNetCommitSha readCommitSha(@NotNull JsonReader in) throws IOException {
+        String url = null;
+        String sha = null;
+        beginItem(in);
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "url":
+                    url = nextString(in);
+                    break;
+                case "sha":
+                    sha = nextString(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetCommitSha(url, sha);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @Nullable
+    private static CodingNetCommit.GitCommit readGitCommit(@NotNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String message = null;
+        CodingNetCommit.GitUser author = null;
+        CodingNetCommit.GitUser committer = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "message":
+                    message = nextString(in);
+                    break;
+                case "author":
+                    author = readGitUser(in);
+                    break;
+                case "committer":
+                    committer = readGitUser(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetCommit.GitCommit(message, require(author, "commit.author"), require(committer, "commit.committer"));
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @Nullable
+    private static CodingNetCommit.GitUser readGitUser(@NotNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String name = null;
+        String email = null;
+        Date date = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name":
+                    name = nextString(in);
+                    break;
+                case "email":
+                    email = nextString(in);
+                    break;
+                case "date":
+                    date = nextDate(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetCommit.GitUser(name, email, date);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @NotNull
+    private static CodingNetFile readFile(@NotNull JsonReader in) throws IOException {
+        String filename = null;
+        Integer additions = null;
+        Integer deletions = null;
+        Integer changes = null;
+        String status = null;
+        String rawUrl = null;
+        String patch = null;
+        beginItem(in);
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "filename":
+                    filename = nextString(in);
+                    break;
+                case "additions":
+                    additions = nextInteger(in);
+                    break;
+                case "deletions":
+                    deletions = nextInteger(in);
+                    break;
+                case "changes":
+                    changes = nextInteger(in);
+                    break;
+                case "status":
+                    status = nextString(in);
+                    break;
+                case "raw_url":
+                    rawUrl = nextString(in);
+                    break;
+                case "patch":
+                    patch = nextString(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetFile(filename, require(additions, "additions"), require(deletions, "deletions"), require(changes, "changes"),
+                status, rawUrl, patch);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @NotNull
+    private static CodingNetPullRequest readPullRequest(@NotNull JsonReader in) throws IOException {
+        Long number = null;
+        String state = null;
+        String title = null;
+        String bodyHtml = null;
+        String htmlUrl = null;
+        String diffUrl = null;
+        String patchUrl = null;
+        String issueUrl = null;
+        Date createdAt = null;
+        Date updatedAt = null;
+        Date closedAt = null;
+        Date mergedAt = null;
+        CodingNetUser user = null;
+        CodingNetPullRequest.Link head = null;
+        CodingNetPullRequest.Link base = null;
+        beginItem(in);
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "number":
+                    number = nextLong(in);
+                    break;
+                case "state":
+                    state = nextString(in);
+                    break;
+                case "title":
+                    title = nextString(in);
+                    break;
+                case "body_html":
+                    bodyHtml = nextString(in);
+                    break;
+                case "html_url":
+                    htmlUrl = nextString(in);
+                    break;
+                case "diff_url":
+                    diffUrl = nextString(in);
+                    break;
+                case "patch_url":
+                    patchUrl = nextString(in);
+                    break;
+                case "issue_url":
+                    issueUrl = nextString(in);
+                    break;
+                case "created_at":
+                    createdAt = nextDate(in);
+                    break;
+                case "updated_at":
+                    updatedAt = nextDate(in);
+                    break;
+                case "closed_at":
+                    closedAt = nextDate(in);
+                    break;
+                case "merged_at":
+                    mergedAt = nextDate(in);
+                    break;
+                case "user":
+                    user = readUser(in);
+                    break;
+                case "head":
+                    head = readLink(in);
+                    break;
+                case "base":
+                    base = readLink(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetPullRequest(require(number, "number"), state, title, bodyHtml, htmlUrl, diffUrl, patchUrl, issueUrl,
+                createdAt, updatedAt, closedAt, mergedAt, require(user, "user"), require(head, "head"), require(base, "base"));
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    @Nullable
+    private static CodingNetPullRequest.Link readLink(@NotNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String label = null;
+        String ref = null;
+        String sha = null;
+        CodingNetRepo repo = null;
+        CodingNetUser user = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "label":
+                    label = nextString(in);
+                    break;
+                case "ref":
+                    ref = nextString(in);
+                    break;
+                case "sha":
+                    sha = nextString(in);
+                    break;
+                case "repo":
+                    repo = in.peek() == JsonToken.NULL ? skipNull(in) : readRepo(in);
+                    break;
+                case "user":
+                    user = readUser(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CodingNetPullRequest.Link(label, ref, sha, require(repo, "repo"), require(user, "user"));
+    }
+
+    //--列表元素不能为null, 与fromJson的"Empty Json response"一致
+    private static void beginItem(@NotNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            throw new CodingNetJsonException("Empty Json response");
+        }
+        in.beginObject();
+    }
+
+    @Nullable
+    private static <T> T skipNull(@NotNull JsonReader in) throws IOException {
+        in.nextNull();
+        return null;
+    }
+
+    @Nullable
+    private static Date nextDate(@NotNull JsonReader in) throws IOException {
+        return DateAdapterHolder.ourDates.read(in);
+    }
+
+    @NotNull
+    private static <T> T require(@Nullable T value, @NotNull String field) throws CodingNetJsonException {
+        if (value == null) {
+            throw new CodingNetJsonException("Json parse error: missing '" + field + "'");
+        }
+        return value;
+    }
+
+    //--与全局Gson使用同一个日期解析器
+    private static final class DateAdapterHolder {
+        private static final TypeAdapter<Date> ourDates = CodingNetApiUtil.getDateAdapter();
+    }
+}
@@ -0,0 +1,1015 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * *Raw类的手写解析器, 按字段名直接赋值, 不经过反射
+ * <p>
+ * JSON字段名与反射绑定时一致: 驼峰字段名按{@link com.google.gson.FieldNamingPolicy#LOWER_CASE_WITH_UNDERSCORES}转换,
+ * 有{@link com.google.gson.annotations.SerializedName}的字段使用注解中的名称. 未知字段直接跳过.
+ * 日期和嵌套对象通过Gson获取对应的TypeAdapter, 与全局配置保持一致.
+ * 序列化很少用到, 仍交给反射实现.
+ * <p>
+ * 给*Raw类增加字段时需要同步修改这里.
+ *
+ * @author robin
+ */
+class CodingNetRawTypeAdapters implements TypeAdapterFactory {
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    @Override
+    public <T> TypeAdapter<T> create(@NotNull Gson gson, @NotNull TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        RawAdapter<?> adapter;
+        if (rawType == CodingNetUserRaw.class) {
+            adapter = new UserAdapter(gson);
+        } else if (rawType == CodingNetUserRaw.Data.class) {
+            adapter = new UserDataAdapter(gson);
+        } else if (rawType == CodingNetRepoRaw.class) {
+            adapter = new RepoAdapter(gson);
+        } else if (rawType == CodingNetIssueRaw.class) {
+            adapter = new IssueAdapter(gson);
+        } else if (rawType == CodingNetIssueCommentRaw.class) {
+            adapter = new IssueCommentAdapter(gson);
+        } else if (rawType == CodingNetIssuesSearchResultRaw.class) {
+            adapter = new IssuesSearchResultAdapter(gson);
+        } else if (rawType == CodingNetCommitRaw.class) {
+            adapter = new CommitAdapter(gson);
+        } else if (rawType == CodingNetCommitRaw.GitCommitRaw.class) {
+            adapter = new GitCommitAdapter(gson);
+        } else if (rawType == CodingNetCommitRaw.GitUserRaw.class) {
+            adapter = new GitUserAdapter(gson);
+        } else if (rawType == CodingNetCommitRaw.CommitStatsRaw.class) {
+            adapter = new CommitStatsAdapter(gson);
+        } else if (rawType == CodingNetCommitCommentRaw.class) {
+            adapter = new CommitCommentAdapter(gson);
+        } else if (rawType == CodingNetFileRaw.class) {
+            adapter = new FileAdapter(gson);
+        } else if (rawType == CodingNetBranchRaw.class) {
+            adapter = new BranchAdapter(gson);
+        } else if (rawType == CodingNetOrgRaw.class) {
+            adapter = new OrgAdapter(gson);
+        } else if (rawType == CodingNetAuthorizationRaw.class) {
+            adapter = new AuthorizationAdapter(gson);
+        } else if (rawType == CodingNetGistRaw.class) {
+            adapter = new GistAdapter(gson);
+        } else if (rawType == CodingNetGistRaw.GistFileRaw.class) {
+            adapter = new GistFileAdapter(gson);
+        } else if (rawType == CodingNetPullRequestRaw.class) {
+            adapter = new PullRequestAdapter(gson);
+        } else if (rawType == CodingNetPullRequestRaw.LinkRaw.class) {
+            adapter = new LinkAdapter(gson);
+        } else {
+            return null;
+        }
+        adapter.myFactory = this;
+        return (TypeAdapter<T>) adapter;
+    }
+
+    /**
+     * 读取JSON对象, 每个字段交给{@link #readField}处理
+     */
+    private static abstract class RawAdapter<T> extends TypeAdapter<T> {
+        protected final Gson myGson;
+        private final Class<T> myType;
+        private TypeAdapterFactory myFactory;
+        private volatile TypeAdapter<T> myWriter;
+
+        RawAdapter(@NotNull Gson gson, @NotNull Class<T> type) {
+            myGson = gson;
+            myType = type;
+        }
+
+        @NotNull
+        abstract T create();
+
+        /**
+         * @return false表示未知字段, 由调用方跳过
+         */
+        abstract boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull T target) throws IOException;
+
+        @Override
+        public T read(@NotNull JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            T result = create();
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!readField(in, in.nextName(), result)) {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return result;
+        }
+
+        @Override
+        public void write(@NotNull JsonWriter out, T value) throws IOException {
+            TypeAdapter<T> writer = myWriter;
+            if (writer == null) {
+                writer = myGson.getDelegateAdapter(myFactory, TypeToken.get(myType));
+                myWriter = writer;
+            }
+            writer.write(out, value);
+        }
+    }
+
+    @Nullable
+    static String nextString(@NotNull JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    @Nullable
+    static Long nextLong(@NotNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextLong();
+    }
+
+    @Nullable
+    static Integer nextInteger(@NotNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextInt();
+    }
+
+    @Nullable
+    static Boolean nextBoolean(@NotNull JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    @Nullable
+    static <E> List<E> nextList(@NotNull JsonReader in, @NotNull TypeAdapter<E> element) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<E> result = new ArrayList<E>();
+        in.beginArray();
+        while (in.hasNext()) {
+            result.add(element.read(in));
+        }
+        in.endArray();
+        return result;
+    }
+
+    @Nullable
+    static <E> Map<String, E> nextMap(@NotNull JsonReader in, @NotNull TypeAdapter<E> value) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Map<String, E> result = new LinkedHashMap<String, E>();
+        in.beginObject();
+        while (in.hasNext()) {
+            result.put(in.nextName(), value.read(in));
+        }
+        in.endObject();
+        return result;
+    }
+
+    private static final class UserAdapter extends RawAdapter<CodingNetUserRaw> {
+        private final TypeAdapter<CodingNetUserRaw.Data> myData;
+
+        UserAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetUserRaw.class);
+            myData = gson.getAdapter(CodingNetUserRaw.Data.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetUserRaw create() {
+            return new CodingNetUserRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetUserRaw target) throws IOException {
+            switch (name) {
+                case "login":
+                    target.login = nextString(in);
+                    return true;
+                case "id":
+                    target.id = nextLong(in);
+                    return true;
+                case "url":
+                    target.url = nextString(in);
+                    return true;
+                case "html_url":
+                    target.htmlUrl = nextString(in);
+                    return true;
+                case "avatar_url":
+                    target.avatarUrl = nextString(in);
+                    return true;
+                case "data":
+                    target.data = myData.read(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class UserDataAdapter extends RawAdapter<CodingNetUserRaw.Data> {
+        UserDataAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetUserRaw.Data.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetUserRaw.Data create() {
+            return new CodingNetUserRaw.Data();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetUserRaw.Data target) throws IOException {
+            if ("name".equals(name)) {
+                target.name = nextString(in);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class RepoAdapter extends RawAdapter<CodingNetRepoRaw> {
+        RepoAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetRepoRaw.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetRepoRaw create() {
+            return new CodingNetRepoRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetRepoRaw target) throws IOException {
+            if ("https_url".equals(name)) {
+                target.httpsUrl = nextString(in);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class IssueAdapter extends RawAdapter<CodingNetIssueRaw> {
+        private final TypeAdapter<CodingNetUserRaw> myUser;
+        private final TypeAdapter<Date> myDate;
+
+        IssueAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetIssueRaw.class);
+            myUser = gson.getAdapter(CodingNetUserRaw.class);
+            myDate = gson.getAdapter(Date.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetIssueRaw create() {
+            return new CodingNetIssueRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetIssueRaw target) throws IOException {
+            switch (name) {
+                case "url":
+                    target.url = nextString(in);
+                    return true;
+                case "html_url":
+                    target.htmlUrl = nextString(in);
+                    return true;
+                case "number":
+                    target.number = nextLong(in);
+                    return true;
+                case "state":
+                    target.state = nextString(in);
+                    return true;
+                case "title":
+                    target.title = nextString(in);
+                    return true;
+                case "body":
+                    target.body = nextString(in);
+                    return true;
+                case "user":
+                    target.user = myUser.read(in);
+                    return true;
+                case "assignee":
+                    target.assignee = myUser.read(in);
+                    return true;
+                case "closed_at":
+                    target.closedAt = myDate.read(in);
+                    return true;
+                case "created_at":
+                    target.createdAt = myDate.read(in);
+                    return true;
+                case "updated_at":
+                    target.updatedAt = myDate.read(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class IssueCommentAdapter extends RawAdapter<CodingNetIssueCommentRaw> {
+        private final TypeAdapter<CodingNetUserRaw> myUser;
+        private final TypeAdapter<Date> myDate;
+
+        IssueCommentAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetIssueCommentRaw.class);
+            myUser = gson.getAdapter(CodingNetUserRaw.class);
+            myDate = gson.getAdapter(Date.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetIssueCommentRaw create() {
+            return new CodingNetIssueCommentRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetIssueCommentRaw target) throws IOException {
+            switch (name) {
+                case "id":
+                    target.id = nextLong(in);
+                    return true;
+                case "url":
+                    target.url = nextString(in);
+                    return true;
+                case "html_url":
+                    target.htmlUrl = nextString(in);
+                    return true;
+                case "body":
+                    target.body = nextString(in);
+                    return true;
+                case "body_html":
+                    target.bodyHtml = nextString(in);
+                    return true;
+                case "created_at":
+                    target.createdAt = myDate.read(in);
+                    return true;
+                case "updated_at":
+                    target.updatedAt = myDate.read(in);
+                    return true;
+                case "user":
+                    target.user = myUser.read(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class IssuesSearchResultAdapter extends RawAdapter<CodingNetIssuesSearchResultRaw> {
+        private final TypeAdapter<CodingNetIssueRaw> myIssue;
+
+        IssuesSearchResultAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetIssuesSearchResultRaw.class);
+            myIssue = gson.getAdapter(CodingNetIssueRaw.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetIssuesSearchResultRaw create() {
+            return new CodingNetIssuesSearchResultRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetIssuesSearchResultRaw target) throws IOException {
+            if ("items".equals(name)) {
+                target.items = nextList(in, myIssue);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class CommitAdapter extends RawAdapter<CodingNetCommitRaw> {
+        private final TypeAdapter<CodingNetUserRaw> myUser;
+        private final TypeAdapter<CodingNetCommitRaw.GitCommitRaw> myGitCommit;
+        private final TypeAdapter<CodingNetCommitRaw.CommitStatsRaw> myStats;
+        private final TypeAdapter<CodingNetFileRaw> myFile;
+        private final TypeAdapter<CodingNetCommitRaw> myParent;
+
+        CommitAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetCommitRaw.class);
+            myUser = gson.getAdapter(CodingNetUserRaw.class);
+            myGitCommit = gson.getAdapter(CodingNetCommitRaw.GitCommitRaw.class);
+            myStats = gson.getAdapter(CodingNetCommitRaw.CommitStatsRaw.class);
+            myFile = gson.getAdapter(CodingNetFileRaw.class);
+            //--parents与自身同类型, Gson在创建过程中返回代理
+            myParent = gson.getAdapter(CodingNetCommitRaw.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetCommitRaw create() {
+            return new CodingNetCommitRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetCommitRaw target) throws IOException {
+            switch (name) {
+                case "url":
+                    target.url = nextString(in);
+                    return true;
+                case "sha":
+                    target.sha = nextString(in);
+                    return true;
+                case "author":
+                    target.author = myUser.read(in);
+                    return true;
+                case "committer":
+                    target.committer = myUser.read(in);
+                    return true;
+                case "commit":
+                    target.commit = myGitCommit.read(in);
+                    return true;
+                case "stats":
+                    target.stats = myStats.read(in);
+                    return true;
+                case "files":
+                    target.files = nextList(in, myFile);
+                    return true;
+                case "parents":
+                    target.parents = nextList(in, myParent);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class GitCommitAdapter extends RawAdapter<CodingNetCommitRaw.GitCommitRaw> {
+        private final TypeAdapter<CodingNetCommitRaw.GitUserRaw> myGitUser;
+
+        GitCommitAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetCommitRaw.GitCommitRaw.class);
+            myGitUser = gson.getAdapter(CodingNetCommitRaw.GitUserRaw.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetCommitRaw.GitCommitRaw create() {
+            return new CodingNetCommitRaw.GitCommitRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetCommitRaw.GitCommitRaw target) throws IOException {
+            switch (name) {
+                case "url":
+                    target.url = nextString(in);
+                    return true;
+                case "message":
+                    target.message = nextString(in);
+                    return true;
+                case "author":
+                    target.author = myGitUser.read(in);
+                    return true;
+                case "committer":
+                    target.committer = myGitUser.read(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class GitUserAdapter extends RawAdapter<CodingNetCommitRaw.GitUserRaw> {
+        private final TypeAdapter<Date> myDate;
+
+        GitUserAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetCommitRaw.GitUserRaw.class);
+            myDate = gson.getAdapter(Date.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetCommitRaw.GitUserRaw create() {
+            return new CodingNetCommitRaw.GitUserRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetCommitRaw.GitUserRaw target) throws IOException {
+            switch (name) {
+                case "name":
+                    target.name = nextString(in);
+                    return true;
+                case "email":
+                    target.email = nextString(in);
+                    return true;
+                case "date":
+                    target.date = myDate.read(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class CommitStatsAdapter extends RawAdapter<CodingNetCommitRaw.CommitStatsRaw> {
+        CommitStatsAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetCommitRaw.CommitStatsRaw.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetCommitRaw.CommitStatsRaw create() {
+            return new CodingNetCommitRaw.CommitStatsRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetCommitRaw.CommitStatsRaw target) throws IOException {
+            switch (name) {
+                case "additions":
+                    target.additions = nextInteger(in);
+                    return true;
+                case "deletions":
+                    target.deletions = nextInteger(in);
+                    return true;
+                case "total":
+                    target.total = nextInteger(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class CommitCommentAdapter extends RawAdapter<CodingNetCommitCommentRaw> {
+        private final TypeAdapter<CodingNetUserRaw> myUser;
+        private final TypeAdapter<Date> myDate;
+
+        CommitCommentAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetCommitCommentRaw.class);
+            myUser = gson.getAdapter(CodingNetUserRaw.class);
+            myDate = gson.getAdapter(Date.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetCommitCommentRaw create() {
+            return new CodingNetCommitCommentRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetCommitCommentRaw target) throws IOException {
+            switch (name) {
+                case "html_url":
+                    target.htmlUrl = nextString(in);
+                    return true;
+                case "url":
+                    target.url = nextString(in);
+                    return true;
+                case "id":
+                    target.id = nextLong(in);
+                    return true;
+                case "commit_id":
+                    target.commitId = nextString(in);
+                    return true;
+                case "path":
+                    target.path = nextString(in);
+                    return true;
+                case "position":
+                    target.position = nextLong(in);
+                    return true;
+                case "line":
+                    target.line = nextLong(in);
+                    return true;
+                case "body":
+                    target.body = nextString(in);
+                    return true;
+                case "body_html":
+                    target.bodyHtml = nextString(in);
+                    return true;
+                case "user":
+                    target.user = myUser.read(in);
+                    return true;
+                case "created_at":
+                    target.createdAt = myDate.read(in);
+                    return true;
+                case "updated_at":
+                    target.updatedAt = myDate.read(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class FileAdapter extends RawAdapter<CodingNetFileRaw> {
+        FileAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetFileRaw.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetFileRaw create() {
+            return new CodingNetFileRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetFileRaw target) throws IOException {
+            switch (name) {
+                case "filename":
+                    target.filename = nextString(in);
+                    return true;
+                case "additions":
+                    target.additions = nextInteger(in);
+                    return true;
+                case "deletions":
+                    target.deletions = nextInteger(in);
+                    return true;
+                case "changes":
+                    target.changes = nextInteger(in);
+                    return true;
+                case "status":
+                    target.status = nextString(in);
+                    return true;
+                case "raw_url":
+                    target.rawUrl = nextString(in);
+                    return true;
+                case "blob_url":
+                    target.blobUrl = nextString(in);
+                    return true;
+                case "patch":
+                    target.patch = nextString(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class BranchAdapter extends RawAdapter<CodingNetBranchRaw> {
+        BranchAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetBranchRaw.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetBranchRaw create() {
+            return new CodingNetBranchRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetBranchRaw target) throws IOException {
+            if ("name".equals(name)) {
+                target.name = nextString(in);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class OrgAdapter extends RawAdapter<CodingNetOrgRaw> {
+        OrgAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetOrgRaw.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetOrgRaw create() {
+            return new CodingNetOrgRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetOrgRaw target) throws IOException {
+            switch (name) {
+                case "login":
+                    target.login = nextString(in);
+                    return true;
+                case "id":
+                    target.id = nextLong(in);
+                    return true;
+                case "url":
+                    target.url = nextString(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class AuthorizationAdapter extends RawAdapter<CodingNetAuthorizationRaw> {
+        private final TypeAdapter<String> myString;
+
+        AuthorizationAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetAuthorizationRaw.class);
+            myString = gson.getAdapter(String.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetAuthorizationRaw create() {
+            return new CodingNetAuthorizationRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetAuthorizationRaw target) throws IOException {
+            switch (name) {
+                case "id":
+                    target.id = nextLong(in);
+                    return true;
+                case "url":
+                    target.url = nextString(in);
+                    return true;
+                case "token":
+                    target.token = nextString(in);
+                    return true;
+                case "note":
+                    target.note = nextString(in);
+                    return true;
+                case "note_url":
+                    target.noteUrl = nextString(in);
+                    return true;
+                case "scopes":
+                    target.scopes = nextList(in, myString);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class GistAdapter extends RawAdapter<CodingNetGistRaw> {
+        private final TypeAdapter<CodingNetGistRaw.GistFileRaw> myFile;
+        private final TypeAdapter<CodingNetUserRaw> myUser;
+        private final TypeAdapter<Date> myDate;
+
+        GistAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetGistRaw.class);
+            myFile = gson.getAdapter(CodingNetGistRaw.GistFileRaw.class);
+            myUser = gson.getAdapter(CodingNetUserRaw.class);
+            myDate = gson.getAdapter(Date.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetGistRaw create() {
+            return new CodingNetGistRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetGistRaw target) throws IOException {
+            switch (name) {
+                case "id":
+                    target.id = nextString(in);
+                    return true;
+                case "description":
+                    target.description = nextString(in);
+                    return true;
+                case "public":
+                    target.isPublic = nextBoolean(in);
+                    return true;
+                case "url":
+                    target.url = nextString(in);
+                    return true;
+                case "html_url":
+                    target.htmlUrl = nextString(in);
+                    return true;
+                case "git_pull_url":
+                    target.gitPullUrl = nextString(in);
+                    return true;
+                case "git_push_url":
+                    target.gitPushUrl = nextString(in);
+                    return true;
+                case "files":
+                    target.files = nextMap(in, myFile);
+                    return true;
+                case "owner":
+                    target.owner = myUser.read(in);
+                    return true;
+                case "created_at":
+                    target.createdAt = myDate.read(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class GistFileAdapter extends RawAdapter<CodingNetGistRaw.GistFileRaw> {
+        GistFileAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetGistRaw.GistFileRaw.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetGistRaw.GistFileRaw create() {
+            return new CodingNetGistRaw.GistFileRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetGistRaw.GistFileRaw target) throws IOException {
+            switch (name) {
+                case "size":
+                    target.size = nextLong(in);
+                    return true;
+                case "filename":
+                    target.filename = nextString(in);
+                    return true;
+                case "content":
+                    target.content = nextString(in);
+                    return true;
+                case "raw_url":
+                    target.raw_url = nextString(in);
+                    return true;
+                case "type":
+                    target.type = nextString(in);
+                    return true;
+                case "language":
+                    target.language = nextString(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class PullRequestAdapter extends RawAdapter<CodingNetPullRequestRaw> {
+        private final TypeAdapter<CodingNetUserRaw> myUser;
+        private final TypeAdapter<CodingNetPullRequestRaw.LinkRaw> myLink;
+        private final TypeAdapter<Date> myDate;
+
+        PullRequestAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetPullRequestRaw.class);
+            myUser = gson.getAdapter(CodingNetUserRaw.class);
+            myLink = gson.getAdapter(CodingNetPullRequestRaw.LinkRaw.class);
+            myDate = gson.getAdapter(Date.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetPullRequestRaw create() {
+            return new CodingNetPullRequestRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetPullRequestRaw target) throws IOException {
+            switch (name) {
+                case "number":
+                    target.number = nextLong(in);
+                    return true;
+                case "state":
+                    target.state = nextString(in);
+                    return true;
+                case "title":
+                    target.title = nextString(in);
+                    return true;
+                case "body":
+                    target.body = nextString(in);
+                    return true;
+                case "body_html":
+                    target.bodyHtml = nextString(in);
+                    return true;
+                case "url":
+                    target.url = nextString(in);
+                    return true;
+                case "html_url":
+                    target.htmlUrl = nextString(in);
+                    return true;
+                case "diff_url":
+                    target.diffUrl = nextString(in);
+                    return true;
+                case "patch_url":
+                    target.patchUrl = nextString(in);
+                    return true;
+                case "issue_url":
+                    target.issueUrl = nextString(in);
+                    return true;
+                case "merged":
+                    target.merged = nextBoolean(in);
+                    return true;
+                case "mergeable":
+                    target.mergeable = nextBoolean(in);
+                    return true;
+                case "comments":
+                    target.comments = nextInteger(in);
+                    return true;
+                case "commits":
+                    target.commits = nextInteger(in);
+                    return true;
+                case "additions":
+                    target.additions = nextInteger(in);
+                    return true;
+                case "deletions":
+                    target.deletions = nextInteger(in);
+                    return true;
+                case "changed_files":
+                    target.changedFiles = nextInteger(in);
+                    return true;
+                case "created_at":
+                    target.createdAt = myDate.read(in);
+                    return true;
+                case "updated_at":
+                    target.updatedAt = myDate.read(in);
+                    return true;
+                case "closed_at":
+                    target.closedAt = myDate.read(in);
+                    return true;
+                case "merged_at":
+                    target.mergedAt = myDate.read(in);
+                    return true;
+                case "user":
+                    target.user = myUser.read(in);
+                    return true;
+                case "head":
+                    target.head = myLink.read(in);
+                    return true;
+                case "base":
+                    target.base = myLink.read(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static final class LinkAdapter extends RawAdapter<CodingNetPullRequestRaw.LinkRaw> {
+        private final TypeAdapter<CodingNetRepoRaw> myRepo;
+        private final TypeAdapter<CodingNetUserRaw> myUser;
+
+        LinkAdapter(@NotNull Gson gson) {
+            super(gson, CodingNetPullRequestRaw.LinkRaw.class);
+            myRepo = gson.getAdapter(CodingNetRepoRaw.class);
+            myUser = gson.getAdapter(CodingNetUserRaw.class);
+        }
+
+        @NotNull
+        @Override
+        CodingNetPullRequestRaw.LinkRaw create() {
+            return new CodingNetPullRequestRaw.LinkRaw();
+        }
+
+        @Override
+        boolean readField(@NotNull JsonReader in, @NotNull String name, @NotNull CodingNetPullRequestRaw.LinkRaw target) throws IOException {
+            switch (name) {
+                case "label":
+                    target.label = nextString(in);
+                    return true;
+                case "ref":
+                    target.ref = nextString(in);
+                    return true;
+                case "sha":
+                    target.sha = nextString(in);
+                    return true;
+                case "repo":
+                    target.repo = myRepo.read(in);
+                    return true;
+                case "user":
+                    target.user = myUser.read(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+}
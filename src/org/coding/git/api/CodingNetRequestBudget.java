@@ -0,0 +1,279 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import org.apache.http.Header;
+import org.apache.http.client.utils.DateUtils;
+import org.coding.git.exceptions.CodingNetOperationCanceledException;
+import org.coding.git.exceptions.CodingNetRateLimitExceededException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 按账号的请求额度
+ * <p>
+ * 从响应头{@code X-RateLimit-Limit/Remaining/Reset}和{@code Retry-After}(以及HTTP 429)得知服务端的限额, 请求前先领取额度:
+ * <ul>
+ * <li>交互请求只在额度用完或服务端要求等待时排队, 等待超过{@code coding.net.rateLimit.maxWait}(默认5000毫秒)时直接抛出
+ * {@link CodingNetRateLimitExceededException}</li>
+ * <li>后台请求(同步、评论等, 见{@link CodingNetConnection#setBackground(boolean)})还要给交互请求留出余量:
+ * 剩余额度不超过限额的{@code coding.net.rateLimit.reserve}(默认0.2, 至少{@code coding.net.rateLimit.minReserve}即10个)时
+ * 排队到额度重置, 最多等待{@code coding.net.rateLimit.maxBackgroundWait}(默认60000毫秒)</li>
+ * </ul>
+ * 服务端没有返回限额信息时不做任何限制. 当前额度、排队数和等待统计可以通过{@link CodingNetMetrics#budgets()}查看.
+ *
+ * @author robin
+ */
+final class CodingNetRequestBudget {
+    private static final int UNKNOWN = -1;
+    private static final double RESERVE_RATIO = getDouble("coding.net.rateLimit.reserve", 0.2);
+    private static final int MIN_RESERVE = Integer.getInteger("coding.net.rateLimit.minReserve", 10);
+    private static final long MAX_WAIT = Long.getLong("coding.net.rateLimit.maxWait", 5000);
+    private static final long MAX_BACKGROUND_WAIT = Long.getLong("coding.net.rateLimit.maxBackgroundWait", 60000);
+    //--429没有Retry-After时的等待
+    private static final long DEFAULT_RETRY_AFTER = 1000;
+    private static final long WAIT_INTERVAL = 100;
+    //--小于该值的X-RateLimit-Reset按剩余秒数处理, 否则按Unix时间戳
+    private static final long EPOCH_SECONDS_THRESHOLD = 1000000000L;
+
+    private static final ConcurrentMap<String, Budget> ourBudgets = new ConcurrentHashMap<String, Budget>();
+
+    private CodingNetRequestBudget() {
+    }
+
+    @NotNull
+    static Budget get(@NotNull String account) {
+        Budget budget = ourBudgets.get(account);
+        if (budget == null) {
+            Budget created = new Budget(account);
+            budget = ourBudgets.putIfAbsent(account, created);
+            if (budget == null) budget = created;
+        }
+        return budget;
+    }
+
+    @NotNull
+    static List<CodingNetMetrics.BudgetSnapshot> snapshot() {
+        List<CodingNetMetrics.BudgetSnapshot> result = new ArrayList<CodingNetMetrics.BudgetSnapshot>();
+        for (Budget budget : ourBudgets.values()) {
+            result.add(budget.snapshot());
+        }
+        return result;
+    }
+
+    /**
+     * 只清除统计数字, 已知的限额保留
+     */
+    static void resetCounters() {
+        for (Budget budget : ourBudgets.values()) {
+            budget.myInteractive.set(0);
+            budget.myBackground.set(0);
+            budget.myQueuedTotal.set(0);
+            budget.myWaitNanos.set(0);
+            budget.myThrottled.set(0);
+            budget.myRejected.set(0);
+        }
+    }
+
+    /**
+     * @param headers
+     * @return Retry-After要求的等待毫秒数, 没有时为-1
+     */
+    static long getRetryAfterMillis(@NotNull Header[] headers) {
+        String value = getHeader(headers, "Retry-After");
+        if (value == null) return UNKNOWN;
+        long seconds = parseLong(value);
+        if (seconds >= 0) return TimeUnit.SECONDS.toMillis(seconds);
+        Date date = DateUtils.parseDate(value);
+        return date == null ? UNKNOWN : Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+
+    @Nullable
+    private static String getHeader(@NotNull Header[] headers, @NotNull String name) {
+        for (Header header : headers) {
+            if (name.equalsIgnoreCase(header.getName())) return header.getValue();
+        }
+        return null;
+    }
+
+    private static long parseLong(@Nullable String value) {
+        if (value == null) return UNKNOWN;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return UNKNOWN;
+        }
+    }
+
+    private static double getDouble(@NotNull String key, double defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) return defaultValue;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    static final class Budget {
+        private final String myAccount;
+
+        //--以下状态由this保护
+        private int myLimit = UNKNOWN;
+        private int myRemaining = UNKNOWN;
+        //--额度重置和服务端要求恢复请求的时间, System.currentTimeMillis(), 0表示未知
+        private long myResetAt;
+        private long myBlockedUntil;
+        private int myQueued;
+
+        private final AtomicLong myInteractive = new AtomicLong();
+        private final AtomicLong myBackground = new AtomicLong();
+        private final AtomicLong myQueuedTotal = new AtomicLong();
+        private final AtomicLong myWaitNanos = new AtomicLong();
+        private final AtomicLong myThrottled = new AtomicLong();
+        private final AtomicLong myRejected = new AtomicLong();
+
+        private Budget(@NotNull String account) {
+            myAccount = account;
+        }
+
+        /**
+         * 领取一次请求的额度, 需要时排队等待
+         *
+         * @param background 后台请求, 为交互请求保留余量
+         * @param aborted    等待期间定期检查
+         * @throws CodingNetRateLimitExceededException 需要等待的时间超过上限
+         * @throws CodingNetOperationCanceledException
+         */
+        void acquire(boolean background, @NotNull BooleanSupplier aborted)
+                throws CodingNetRateLimitExceededException, CodingNetOperationCanceledException {
+            long maxWait = background ? MAX_BACKGROUND_WAIT : MAX_WAIT;
+            boolean queued = false;
+            long start = 0;
+            try {
+                while (true) {
+                    long wait;
+                    synchronized (this) {
+                        wait = getWait(background, System.currentTimeMillis());
+                        if (wait <= 0) {
+                            if (myRemaining > 0) myRemaining--;
+                            (background ? myBackground : myInteractive).incrementAndGet();
+                            return;
+                        }
+                        if (!queued) {
+                            queued = true;
+                            start = System.nanoTime();
+                            myQueued++;
+                            myQueuedTotal.incrementAndGet();
+                        }
+                    }
+                    long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    if (waited + wait > maxWait) {
+                        myRejected.incrementAndGet();
+                        throw new CodingNetRateLimitExceededException("API rate limit exceeded, retry in " +
+                                Math.max(1, TimeUnit.MILLISECONDS.toSeconds(wait)) + " s", wait);
+                    }
+                    if (aborted.getAsBoolean()) throw new CodingNetOperationCanceledException();
+                    try {
+                        Thread.sleep(Math.min(wait, WAIT_INTERVAL));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CodingNetOperationCanceledException("Operation canceled", e);
+                    }
+                }
+            } finally {
+                if (queued) {
+                    synchronized (this) {
+                        myQueued--;
+                    }
+                    myWaitNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+        }
+
+        /**
+         * @return 还需等待的毫秒数, 0表示可以立即发出
+         */
+        private long getWait(boolean background, long now) {
+            if (now < myBlockedUntil) return myBlockedUntil - now;
+            if (myResetAt == 0 || myRemaining == UNKNOWN) return 0;
+            if (now >= myResetAt) {
+                //--已到重置时间, 在下一个响应带回准确数字之前按满额处理
+                myRemaining = myLimit;
+                myResetAt = 0;
+                return 0;
+            }
+            if (myRemaining <= 0 || background && myRemaining <= getReserve()) return myResetAt - now;
+            return 0;
+        }
+
+        private int getReserve() {
+            if (myLimit == UNKNOWN) return MIN_RESERVE;
+            int reserve = Math.max(MIN_RESERVE, (int) Math.ceil(myLimit * RESERVE_RATIO));
+            //--限额很小时至少留一半给后台请求
+            return Math.min(reserve, myLimit / 2);
+        }
+
+        /**
+         * 根据响应更新额度
+         *
+         * @param headers
+         * @param status  HTTP状态码
+         */
+        void update(@NotNull Header[] headers, int status) {
+            long limit = parseLong(getHeader(headers, "X-RateLimit-Limit"));
+            long remaining = parseLong(getHeader(headers, "X-RateLimit-Remaining"));
+            long reset = parseLong(getHeader(headers, "X-RateLimit-Reset"));
+            long retryAfter = getRetryAfterMillis(headers);
+            boolean throttled = status == 429 || status == 403 && remaining == 0;
+            if (limit < 0 && remaining < 0 && retryAfter < 0 && !throttled) return;
+
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                if (limit >= 0) myLimit = (int) Math.min(limit, Integer.MAX_VALUE);
+                if (remaining >= 0) myRemaining = (int) Math.min(remaining, Integer.MAX_VALUE);
+                if (reset >= 0) {
+                    myResetAt = reset < EPOCH_SECONDS_THRESHOLD ? now + TimeUnit.SECONDS.toMillis(reset) : TimeUnit.SECONDS.toMillis(reset);
+                }
+                if (retryAfter >= 0) {
+                    myBlockedUntil = Math.max(myBlockedUntil, now + retryAfter);
+                } else if (throttled) {
+                    myBlockedUntil = Math.max(myBlockedUntil, myRemaining == 0 && myResetAt > now ? myResetAt : now + DEFAULT_RETRY_AFTER);
+                }
+            }
+            if (throttled) myThrottled.incrementAndGet();
+        }
+
+        @NotNull
+        private synchronized CodingNetMetrics.BudgetSnapshot snapshot() {
+            long now = System.currentTimeMillis();
+            return new CodingNetMetrics.BudgetSnapshot(myAccount, myLimit, myRemaining,
+                    myResetAt == 0 ? UNKNOWN : Math.max(0, myResetAt - now),
+                    Math.max(0, myBlockedUntil - now), myQueued,
+                    myInteractive.get(), myBackground.get(), myQueuedTotal.get(),
+                    TimeUnit.NANOSECONDS.toMillis(myWaitNanos.get()), myThrottled.get(), myRejected.get());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import org.coding.git.exceptions.CodingNetAuthenticationException;
+import org.coding.git.exceptions.CodingNetConfusingException;
+import org.coding.git.exceptions.CodingNetJsonException;
+import org.coding.git.exceptions.CodingNetOperationCanceledException;
+import org.coding.git.exceptions.CodingNetRateLimitExceededException;
+import org.coding.git.exceptions.CodingNetStatusCodeException;
+import org.coding.git.exceptions.CodingNetTwoFactorAuthenticationException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * 相同请求的合并执行(single-flight)
+ * <p>
+ * 同一个键同时只有一个请求真正发出, 期间到达的相同请求等待它的结果或异常.
+ * 确有等待者时, 发起者和每个等待者都拿到结果的副本和新建的同类异常(原异常作为cause), 调用方可以各自修改而互不影响.
+ * 发起者被取消时, 等待者不会收到取消异常, 而是各自重新发起请求.
+ *
+ * @author robin
+ */
+final class CodingNetRequestCoalescer {
+    private static final long WAIT_INTERVAL = 100;
+
+    private static final ConcurrentMap<String, Flight> ourInFlight = new ConcurrentHashMap<String, Flight>();
+
+    private CodingNetRequestCoalescer() {
+    }
+
+    interface Exchange<R> {
+        R execute() throws IOException;
+    }
+
+    /**
+     * @param key      请求键
+     * @param canceled 当前调用方是否已取消, 等待期间定期检查
+     * @param exchange 真正执行请求
+     * @param copier   复制结果, 只在有等待者时调用
+     * @return
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    static <R> R execute(@NotNull String key,
+                         @NotNull BooleanSupplier canceled,
+                         @NotNull Exchange<R> exchange,
+                         @NotNull UnaryOperator<R> copier) throws IOException {
+        while (true) {
+            Flight flight = new Flight();
+            Flight leader = ourInFlight.putIfAbsent(key, flight);
+            if (leader == null) {
+                R result;
+                try {
+                    result = exchange.execute();
+                } catch (IOException | RuntimeException e) {
+                    //--保存的是不会被抛出的副本, 调用方之后修改原异常(setDetails等)不会影响等待者
+                    flight.myResult.completeExceptionally(flight.land() ? copy(e, e) : e);
+                    throw e;
+                } catch (Error e) {
+                    flight.land();
+                    flight.myResult.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    ourInFlight.remove(key, flight);
+                }
+                boolean shared = flight.land();
+                flight.myResult.complete(result);
+                //--有等待者时原结果只留给等待者复制
+                return shared ? copier.apply(result) : result;
+            }
+
+            if (!leader.join()) continue;
+            try {
+                return copier.apply((R) await(leader.myResult, canceled));
+            } catch (CodingNetOperationCanceledException e) {
+                if (canceled.getAsBoolean()) throw e;
+                //--发起者被取消, 由当前调用方重新发起
+            }
+        }
+    }
+
+    @NotNull
+    private static Object await(@NotNull CompletableFuture<Object> leader, @NotNull BooleanSupplier canceled) throws IOException {
+        while (true) {
+            if (canceled.getAsBoolean()) throw new CodingNetOperationCanceledException();
+            try {
+                return leader.get(WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignore) {
+            } catch (InterruptedException e) {
+                throw new CodingNetOperationCanceledException("Operation canceled", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) throw (Error) cause;
+                //--每个等待者一个新异常, 堆栈属于等待者自己
+                Throwable copy = copy(cause, cause.getCause() != null ? cause.getCause() : cause);
+                if (copy instanceof IOException) throw (IOException) copy;
+                if (copy instanceof RuntimeException) throw (RuntimeException) copy;
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * 新建同类型、同消息的异常, 保留插件异常上的附加信息
+     *
+     * @param source
+     * @param cause  新异常的cause
+     * @return
+     */
+    @NotNull
+    private static Throwable copy(@NotNull Throwable source, @NotNull Throwable cause) {
+        final String message = source.getMessage();
+        Throwable copy;
+        if (source instanceof CodingNetTwoFactorAuthenticationException) {
+            copy = new CodingNetTwoFactorAuthenticationException(() -> message, ((CodingNetTwoFactorAuthenticationException) source).isSessionExpired());
+        } else if (source instanceof CodingNetAuthenticationException) {
+            copy = new CodingNetAuthenticationException(() -> message, ((CodingNetAuthenticationException) source).isSessionExpired());
+        } else if (source instanceof CodingNetStatusCodeException) {
+            CodingNetStatusCodeException statusCode = (CodingNetStatusCodeException) source;
+            copy = new CodingNetStatusCodeException(message, statusCode.getError(), statusCode.getStatusCode());
+        } else if (source instanceof CodingNetJsonException) {
+            copy = new CodingNetJsonException(message);
+        } else if (source instanceof CodingNetConfusingException) {
+            copy = new CodingNetConfusingException(message);
+        } else if (source instanceof CodingNetRateLimitExceededException) {
+            copy = new CodingNetRateLimitExceededException(message, ((CodingNetRateLimitExceededException) source).getRetryAfterMillis());
+        } else if (source instanceof CodingNetOperationCanceledException) {
+            copy = new CodingNetOperationCanceledException(message);
+        } else {
+            copy = newInstance(source.getClass(), message);
+        }
+        try {
+            copy.initCause(cause);
+        } catch (IllegalStateException | IllegalArgumentException ignore) {
+        }
+        return copy;
+    }
+
+    /**
+     * 其他异常(SocketTimeoutException、UnknownHostException等)尽量保持原类型, 调用方可能按类型处理
+     */
+    @NotNull
+    private static Throwable newInstance(@NotNull Class<? extends Throwable> type, String message) {
+        try {
+            return type.getConstructor(String.class).newInstance(message);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return RuntimeException.class.isAssignableFrom(type) ? new RuntimeException(message) : new IOException(message);
+        }
+    }
+
+    /**
+     * 一次进行中的请求; 发起者结束后不再接受新的等待者, 由此确定是否需要复制结果
+     */
+    private static final class Flight {
+        private final CompletableFuture<Object> myResult = new CompletableFuture<Object>();
+        private int myFollowers;
+        private boolean myLanded;
+
+        /**
+         * @return false表示请求已经结束, 应当重新发起
+         */
+        synchronized boolean join() {
+            if (myLanded) return false;
+            myFollowers++;
+            return true;
+        }
+
+        /**
+         * @return 是否有等待者
+         */
+        synchronized boolean land() {
+            myLanded = true;
+            return myFollowers > 0;
+        }
+    }
+}
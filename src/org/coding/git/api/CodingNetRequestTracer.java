@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 请求跟踪, 默认关闭, 通过系统属性开启:
+ * <ul>
+ * <li>{@code coding.net.trace=true} 开启跟踪</li>
+ * <li>{@code coding.net.trace.sample=0.1} 采样比例, 默认全部跟踪</li>
+ * <li>{@code coding.net.trace.endpoints=/issues,GET /user} 只跟踪归一化路径包含其中任一项的接口, 默认全部</li>
+ * <li>{@code coding.net.trace.maxBody=2048} 响应内容摘录的最大字符数</li>
+ * </ul>
+ * 关闭或未被采样时只有一次字段判断, 消息由Supplier在真正输出时才生成.
+ * 日志中只出现归一化路径, 不输出查询参数, 避免泄露登录请求中的密码.
+ *
+ * @author robin
+ */
+final class CodingNetRequestTracer {
+    private static final Logger LOG = Logger.getInstance("coding.net.trace");
+
+    private static final boolean ENABLED = Boolean.getBoolean("coding.net.trace");
+    private static final double SAMPLE_RATE = getDouble("coding.net.trace.sample", 1.0);
+    private static final int MAX_BODY = Integer.getInteger("coding.net.trace.maxBody", 2048);
+    private static final List<String> ENDPOINTS = getList("coding.net.trace.endpoints");
+
+    private static final ThreadLocal<Trace> ourCurrent = new ThreadLocal<Trace>();
+    private static final AtomicLong ourIds = new AtomicLong();
+
+    private CodingNetRequestTracer() {
+    }
+
+    /**
+     * @param verb
+     * @param uri
+     * @return 本次请求不跟踪时返回null; 否则结束时必须调用{@link Trace#finish(int, Throwable)}
+     */
+    @Nullable
+    static Trace start(@NotNull String verb, @NotNull String uri) {
+        if (!ENABLED) return null;
+        if (SAMPLE_RATE < 1.0 && ThreadLocalRandom.current().nextDouble() >= SAMPLE_RATE) return null;
+
+        String endpoint = verb + " " + CodingNetMetrics.normalize(uri);
+        if (!ENDPOINTS.isEmpty()) {
+            boolean matched = false;
+            for (String filter : ENDPOINTS) {
+                if (endpoint.contains(filter)) {
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) return null;
+        }
+        return new Trace(endpoint);
+    }
+
+    /**
+     * @return 当前线程上正在跟踪的请求
+     */
+    @Nullable
+    static Trace current() {
+        return ENABLED ? ourCurrent.get() : null;
+    }
+
+    /**
+     * 把JSON写成字符串, 超过长度上限时立即停止序列化, 不会先生成完整的字符串
+     *
+     * @param element
+     * @return
+     */
+    @NotNull
+    static String excerpt(@NotNull JsonElement element) {
+        LimitedWriter writer = new LimitedWriter(MAX_BODY);
+        try {
+            new Gson().toJson(element, writer);
+        } catch (LimitReachedException e) {
+            return writer.toString() + "...(truncated)";
+        } catch (RuntimeException e) {
+            //--摘录失败不影响请求本身
+            return writer.toString() + "...(" + e.getClass().getSimpleName() + ")";
+        }
+        return writer.toString();
+    }
+
+    private static double getDouble(@NotNull String key, double defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) return defaultValue;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    @NotNull
+    private static List<String> getList(@NotNull String key) {
+        String value = System.getProperty(key);
+        if (value == null) return Collections.emptyList();
+        List<String> result = new ArrayList<String>();
+        for (String item : value.split(",")) {
+            item = item.trim();
+            if (!item.isEmpty()) result.add(item);
+        }
+        return result;
+    }
+
+    static final class Trace {
+        private final long myId = ourIds.incrementAndGet();
+        private final String myEndpoint;
+        private final long myStart = System.nanoTime();
+        private final Trace myPrevious;
+
+        private Trace(@NotNull String endpoint) {
+            myEndpoint = endpoint;
+            myPrevious = ourCurrent.get();
+            ourCurrent.set(this);
+            LOG.info("[#" + myId + "] " + endpoint);
+        }
+
+        void log(@NotNull Supplier<String> message) {
+            LOG.info("[#" + myId + "] " + message.get());
+        }
+
+        /**
+         * @param status HTTP状态码, 没有响应时为-1
+         * @param error
+         */
+        void finish(int status, @Nullable Throwable error) {
+            if (myPrevious == null) {
+                ourCurrent.remove();
+            } else {
+                ourCurrent.set(myPrevious);
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - myStart);
+            String message = "[#" + myId + "] " + myEndpoint + " -> " + (status == -1 ? "no response" : status) + " in " + millis + " ms";
+            if (error == null) {
+                LOG.info(message);
+            } else {
+                LOG.info(message + ", " + error.getClass().getSimpleName() + ": " + error.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 只用于跳出序列化, 没有堆栈也不携带信息, 共用一个实例
+     */
+    private static final class LimitReachedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private static final LimitReachedException INSTANCE = new LimitReachedException();
+
+        private LimitReachedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class LimitedWriter extends Writer {
+        private final StringBuilder myBuilder = new StringBuilder();
+        private final int myLimit;
+
+        private LimitedWriter(int limit) {
+            myLimit = limit;
+        }
+
+        @Override
+        public void write(@NotNull char[] chars, int off, int len) {
+            int room = myLimit - myBuilder.length();
+            if (len > room) {
+                myBuilder.append(chars, off, Math.max(room, 0));
+                throw LimitReachedException.INSTANCE;
+            }
+            myBuilder.append(chars, off, len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return myBuilder.toString();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import org.coding.git.exceptions.CodingNetAuthenticationException;
+import org.coding.git.exceptions.CodingNetConfusingException;
+import org.coding.git.exceptions.CodingNetOperationCanceledException;
+import org.coding.git.exceptions.CodingNetRateLimitExceededException;
+import org.coding.git.exceptions.CodingNetStatusCodeException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 请求失败后的重试与按host的熔断, 参数可通过系统属性调整:
+ * <ul>
+ * <li>{@code coding.net.retry.max=2} GET/HEAD失败后的最多重试次数, 0关闭重试</li>
+ * <li>{@code coding.net.retry.baseDelay=200} 首次重试前的最长等待(毫秒), 之后每次翻倍, 实际等待在0到该值之间随机</li>
+ * <li>{@code coding.net.retry.maxDelay=5000} 单次等待上限(毫秒)</li>
+ * <li>{@code coding.net.circuit.failures=5} 同一host连续失败多少次后熔断, 0关闭熔断</li>
+ * <li>{@code coding.net.circuit.openMillis=30000} 熔断持续时间, 之后放行一个探测请求, 成功则恢复</li>
+ * </ul>
+ * 只有连接失败、超时和5xx算作失败; 业务码、认证失败、限流和4xx说明服务端正常工作, 不重试也不计入熔断.
+ * 限流由{@link CodingNetRequestBudget}在下次请求前等待.
+ *
+ * @author robin
+ */
+final class CodingNetRetryPolicy {
+    private static final int MAX_RETRIES = Integer.getInteger("coding.net.retry.max", 2);
+    private static final long BASE_DELAY = Long.getLong("coding.net.retry.baseDelay", 200);
+    private static final long MAX_DELAY = Long.getLong("coding.net.retry.maxDelay", 5000);
+    private static final int CIRCUIT_FAILURES = Integer.getInteger("coding.net.circuit.failures", 5);
+    private static final long CIRCUIT_OPEN_MILLIS = Long.getLong("coding.net.circuit.openMillis", 30000);
+
+    private static final ConcurrentMap<String, CircuitBreaker> ourBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    private CodingNetRetryPolicy() {
+    }
+
+    /**
+     * @param verb
+     * @param attempt 已经重试的次数
+     * @param error
+     * @return 是否应当再试一次
+     */
+    static boolean shouldRetry(@NotNull CodingNetConnection.HttpVerb verb, int attempt, @NotNull IOException error) {
+        if (verb != CodingNetConnection.HttpVerb.GET && verb != CodingNetConnection.HttpVerb.HEAD) return false;
+        return attempt < MAX_RETRIES && isServerFailure(error);
+    }
+
+    /**
+     * @param error
+     * @return 服务端不可用或网络故障, 而不是请求本身的问题
+     */
+    static boolean isServerFailure(@NotNull IOException error) {
+        if (error instanceof CodingNetStatusCodeException) {
+            return ((CodingNetStatusCodeException) error).getStatusCode() >= 500;
+        }
+        //--取消、限流、认证、业务码与解析错误都不是服务端故障; 证书和域名错误重试也不会恢复
+        return !(error instanceof CodingNetOperationCanceledException)
+                && !(error instanceof CodingNetRateLimitExceededException)
+                && !(error instanceof CodingNetAuthenticationException)
+                && !(error instanceof CodingNetConfusingException)
+                && !(error instanceof SSLException)
+                && !(error instanceof UnknownHostException);
+    }
+
+    /**
+     * 带随机抖动的指数退避, 多个客户端同时失败时不会在同一时刻一起重试
+     *
+     * @param attempt 已经重试的次数
+     * @return 等待毫秒数
+     */
+    static long getDelay(int attempt) {
+        long ceiling = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempt, 20));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    @NotNull
+    static CircuitBreaker getCircuitBreaker(@NotNull String host) {
+        CircuitBreaker breaker = ourBreakers.get(host);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(host);
+            breaker = ourBreakers.putIfAbsent(host, created);
+            if (breaker == null) breaker = created;
+        }
+        return breaker;
+    }
+
+    /**
+     * 连续失败达到阈值后在一段时间内直接拒绝请求; 到期后只放行一个探测请求, 其余请求继续被拒绝直到探测有结果
+     */
+    static final class CircuitBreaker {
+        private final String myHost;
+        private final AtomicInteger myFailures = new AtomicInteger();
+        private final AtomicBoolean myProbing = new AtomicBoolean();
+        private volatile long myOpenUntil;
+
+        private CircuitBreaker(@NotNull String host) {
+            myHost = host;
+        }
+
+        /**
+         * @return 熔断中时返回应当抛出的异常, 否则返回null并允许发出请求
+         */
+        @Nullable
+        CodingNetStatusCodeException check() {
+            if (CIRCUIT_FAILURES <= 0 || myFailures.get() < CIRCUIT_FAILURES) return null;
+            long remaining = myOpenUntil - System.nanoTime();
+            if (remaining <= 0 && myProbing.compareAndSet(false, true)) return null;
+            long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining));
+            return new CodingNetStatusCodeException(myHost + " is unavailable, retry in " + seconds + " s", 503);
+        }
+
+        void onSuccess() {
+            if (myFailures.get() != 0) myFailures.set(0);
+            myProbing.set(false);
+        }
+
+        /**
+         * 请求被取消等无法判断服务端状态时, 放行下一个探测请求
+         */
+        void release() {
+            myProbing.set(false);
+        }
+
+        void onFailure() {
+            if (myFailures.incrementAndGet() >= CIRCUIT_FAILURES) {
+                myOpenUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CIRCUIT_OPEN_MILLIS);
+                myProbing.set(false);
+            }
+        }
+    }
+}
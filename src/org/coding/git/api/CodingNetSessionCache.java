@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.api;
+
+import org.coding.git.util.CodingNetAuthData;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已验证会话缓存
+ * <p>
+ * 登录成功后会话cookie保存在{@link CodingNetHttpClientRegistry}按账号共享的HttpClient中,
+ * 有效期内再次执行任务时不必重新登录验证. 缓存以host和{@link CodingNetAuthData#getIdentity()}为键,
+ * 服务端返回未登录/登录过期业务码时由{@link CodingNetConnection}使其失效.
+ *
+ * @author robin
+ */
+public class CodingNetSessionCache {
+    private static final long TTL = TimeUnit.MINUTES.toMillis(10);
+
+    private static final ConcurrentMap<String, Long> ourValidated = new ConcurrentHashMap<String, Long>();
+
+    private CodingNetSessionCache() {
+    }
+
+    public static boolean isValidated(@NotNull CodingNetAuthData auth) {
+        String key = getKey(auth);
+        Long validated = ourValidated.get(key);
+        if (validated == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - validated > TTL) {
+            ourValidated.remove(key, validated);
+            return false;
+        }
+        return true;
+    }
+
+    public static void markValidated(@NotNull CodingNetAuthData auth) {
+        ourValidated.put(getKey(auth), System.currentTimeMillis());
+    }
+
+    public static void invalidate(@NotNull CodingNetAuthData auth) {
+        ourValidated.remove(getKey(auth));
+    }
+
+    @NotNull
+    private static String getKey(@NotNull CodingNetAuthData auth) {
+        return auth.getHost() + "|" + auth.getIdentity();
+    }
+}
@@ -15,16 +15,39 @@
  */
 package org.coding.git.exceptions;
 
+import org.jetbrains.annotations.NotNull;
+
 import java.io.IOException;
+import java.util.function.Supplier;
 
 /**
  *@author robin
  */
 public class CodingNetAuthenticationException extends IOException {
+  private Supplier<String> myMessageSupplier;
+  private String myMessage;
+  private boolean mySessionExpired;
+
   public CodingNetAuthenticationException() {
     super();
   }
 
+  /**
+   * 消息在第一次读取时才生成
+   */
+  public CodingNetAuthenticationException(@NotNull Supplier<String> message) {
+    super();
+    myMessageSupplier = message;
+  }
+
+  /**
+   * @param sessionExpired 由未登录/登录过期业务码引起, 重新登录后可以恢复
+   */
+  public CodingNetAuthenticationException(@NotNull Supplier<String> message, boolean sessionExpired) {
+    this(message);
+    mySessionExpired = sessionExpired;
+  }
+
   public CodingNetAuthenticationException(String message) {
     super(message);
   }
@@ -36,4 +59,17 @@ public class CodingNetAuthenticationException extends IOException {
   public CodingNetAuthenticationException(Throwable cause) {
     super(cause);
   }
+
+  public boolean isSessionExpired() {
+    return mySessionExpired;
+  }
+
+  @Override
+  public synchronized String getMessage() {
+    if (myMessageSupplier != null) {
+      myMessage = myMessageSupplier.get();
+      myMessageSupplier = null;
+    }
+    return myMessage != null ? myMessage : super.getMessage();
+  }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.exceptions;
+
+import java.io.IOException;
+
+
+/**
+ * 超出服务端的请求频率限制, 或本地的请求额度已用完
+ *
+ * @author robin
+ */
+public class CodingNetRateLimitExceededException extends IOException {
+  private final long myRetryAfterMillis;
+
+  public CodingNetRateLimitExceededException(String message) {
+    this(message, -1);
+  }
+
+  public CodingNetRateLimitExceededException(String message, long retryAfterMillis) {
+    super(message);
+    myRetryAfterMillis = retryAfterMillis;
+  }
+
+  /**
+   * @return 额度恢复前还需等待的毫秒数, 未知时为-1
+   */
+  public long getRetryAfterMillis() {
+    return myRetryAfterMillis;
+  }
+}
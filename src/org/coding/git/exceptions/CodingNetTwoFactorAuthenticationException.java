@@ -1,5 +1,9 @@
 package org.coding.git.exceptions;
 
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Supplier;
+
 /**
  * 两步验证异常定义
  * @author robin
@@ -13,6 +17,14 @@ public class CodingNetTwoFactorAuthenticationException extends CodingNetAuthenti
     super(message);
   }
 
+  public CodingNetTwoFactorAuthenticationException(@NotNull Supplier<String> message) {
+    super(message);
+  }
+
+  public CodingNetTwoFactorAuthenticationException(@NotNull Supplier<String> message, boolean sessionExpired) {
+    super(message, sessionExpired);
+  }
+
   public CodingNetTwoFactorAuthenticationException(String message, Throwable cause) {
     super(message, cause);
   }
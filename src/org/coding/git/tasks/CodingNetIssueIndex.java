@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.tasks;
+
+import org.coding.git.api.CodingNetIssue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over issue titles, bodies and the comments seen so far.
+ * <p>
+ * Text is split into lower-cased runs of letters and digits; CJK characters are indexed one by one, since there are
+ * no word boundaries to split on. Every query token is matched as a prefix, and all tokens of a query have to match.
+ */
+class CodingNetIssueIndex {
+  private static final Pattern HTML_TAG = Pattern.compile("<[^>]*>");
+
+  private final ReadWriteLock myLock = new ReentrantReadWriteLock();
+  // token -> issue numbers; sorted to answer prefix queries with a range scan
+  private final NavigableMap<String, Set<Long>> myPostings = new TreeMap<String, Set<Long>>();
+  // issue number -> tokens it is currently indexed under, to remove stale postings on update
+  private final Map<Long, Set<String>> myIssueTokens = new HashMap<Long, Set<String>>();
+  private final Map<Long, Set<String>> myCommentTokens = new HashMap<Long, Set<String>>();
+
+  /**
+   * Re-index the given issues. Comments are fetched one issue at a time and cannot be re-read here, so they are kept;
+   * only those of issues that are gone are dropped.
+   */
+  void reset(@NotNull Collection<CodingNetIssue> issues) {
+    myLock.writeLock().lock();
+    try {
+      myPostings.clear();
+      myIssueTokens.clear();
+      for (CodingNetIssue issue : issues) {
+        index(issue);
+      }
+      myCommentTokens.keySet().retainAll(myIssueTokens.keySet());
+      for (Map.Entry<Long, Set<String>> entry : myCommentTokens.entrySet()) {
+        addPostings(entry.getKey(), entry.getValue());
+      }
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+  }
+
+  void update(@NotNull Collection<CodingNetIssue> issues) {
+    myLock.writeLock().lock();
+    try {
+      for (CodingNetIssue issue : issues) {
+        index(issue);
+      }
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Replace the indexed comments of an issue, called whenever comments have been fetched from the server
+   */
+  void updateComments(long number, @NotNull Collection<String> comments) {
+    Set<String> tokens = new HashSet<String>();
+    for (String comment : comments) {
+      tokenize(HTML_TAG.matcher(comment).replaceAll(" "), tokens);
+    }
+
+    myLock.writeLock().lock();
+    try {
+      replace(myCommentTokens, number, tokens);
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Restore comment tokens saved by {@link #getCommentTokens()}, for issues that are indexed
+   */
+  void restoreComments(@NotNull Map<Long, ? extends Collection<String>> commentTokens) {
+    myLock.writeLock().lock();
+    try {
+      for (Map.Entry<Long, ? extends Collection<String>> entry : commentTokens.entrySet()) {
+        if (entry.getKey() != null && entry.getValue() != null && myIssueTokens.containsKey(entry.getKey())) {
+          replace(myCommentTokens, entry.getKey(), new HashSet<String>(entry.getValue()));
+        }
+      }
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return a copy of the indexed comment tokens by issue number, to be persisted
+   */
+  @NotNull
+  Map<Long, Set<String>> getCommentTokens() {
+    myLock.readLock().lock();
+    try {
+      Map<Long, Set<String>> result = new HashMap<Long, Set<String>>();
+      for (Map.Entry<Long, Set<String>> entry : myCommentTokens.entrySet()) {
+        result.put(entry.getKey(), new HashSet<String>(entry.getValue()));
+      }
+      return result;
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return numbers of the issues matching every token of the query, or null if the query has no tokens
+   */
+  @Nullable
+  Set<Long> search(@NotNull String query) {
+    Set<String> tokens = new LinkedHashSet<String>();
+    tokenize(query, tokens);
+    if (tokens.isEmpty()) return null;
+
+    myLock.readLock().lock();
+    try {
+      Set<Long> result = null;
+      for (String token : tokens) {
+        Set<Long> matches = new HashSet<Long>();
+        for (Set<Long> numbers : myPostings.subMap(token, true, token + Character.MAX_VALUE, false).values()) {
+          matches.addAll(numbers);
+        }
+        if (result == null) {
+          result = matches;
+        }
+        else {
+          result.retainAll(matches);
+        }
+        if (result.isEmpty()) break;
+      }
+      return result;
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  private void index(@NotNull CodingNetIssue issue) {
+    Set<String> tokens = new HashSet<String>();
+    tokens.add(String.valueOf(issue.getNumber()));
+    tokenize(issue.getTitle(), tokens);
+    tokenize(HTML_TAG.matcher(issue.getBody()).replaceAll(" "), tokens);
+    replace(myIssueTokens, issue.getNumber(), tokens);
+  }
+
+  private void replace(@NotNull Map<Long, Set<String>> owner, long number, @NotNull Set<String> tokens) {
+    Set<String> old = owner.put(number, tokens);
+    if (old != null) {
+      for (String token : old) {
+        if (!isIndexedElsewhere(owner, number, token)) {
+          removePosting(token, number);
+        }
+      }
+    }
+    addPostings(number, tokens);
+  }
+
+  private void addPostings(long number, @NotNull Set<String> tokens) {
+    for (String token : tokens) {
+      Set<Long> numbers = myPostings.get(token);
+      if (numbers == null) {
+        numbers = new HashSet<Long>();
+        myPostings.put(token, numbers);
+      }
+      numbers.add(number);
+    }
+  }
+
+  // the same token may come both from the issue text and from its comments
+  private boolean isIndexedElsewhere(@NotNull Map<Long, Set<String>> owner, long number, @NotNull String token) {
+    Map<Long, Set<String>> other = owner == myIssueTokens ? myCommentTokens : myIssueTokens;
+    Set<String> tokens = other.get(number);
+    return tokens != null && tokens.contains(token);
+  }
+
+  private void removePosting(@NotNull String token, long number) {
+    Set<Long> numbers = myPostings.get(token);
+    if (numbers != null) {
+      numbers.remove(number);
+      if (numbers.isEmpty()) {
+        myPostings.remove(token);
+      }
+    }
+  }
+
+  static void tokenize(@NotNull String text, @NotNull Collection<String> tokens) {
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      char c = i < text.length() ? text.charAt(i) : ' ';
+      boolean ideographic = Character.isIdeographic(c);
+      if (Character.isLetterOrDigit(c) && !ideographic) {
+        if (start < 0) start = i;
+        continue;
+      }
+      if (start >= 0) {
+        tokens.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+        start = -1;
+      }
+      if (ideographic) {
+        tokens.add(String.valueOf(c));
+      }
+    }
+  }
+}
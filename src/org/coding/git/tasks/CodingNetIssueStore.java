@@ -0,0 +1,397 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.tasks;
+
+import com.google.gson.*;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import org.coding.git.api.CodingNetApiUtil;
+import org.coding.git.api.CodingNetConnection;
+import org.coding.git.api.CodingNetIssue;
+import org.coding.git.exceptions.CodingNetOperationCanceledException;
+import org.coding.git.util.CodingNetAuthData;
+import org.coding.git.util.CodingNetUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Local copy of the issues of one repository, persisted under the IDE system directory.
+ * <p>
+ * The store is filled by a full download once and then kept up to date incrementally: only issues updated since the
+ * newest {@code updated_at} already known are requested. Issues deleted on the server are only noticed by the periodic
+ * full resync. Reads never touch the network and are served from an immutable snapshot; text queries go through a
+ * {@link CodingNetIssueIndex} kept in step with every sync.
+ */
+public class CodingNetIssueStore {
+  private static final Logger LOG = CodingNetUtil.LOG;
+
+  private static final int FORMAT_VERSION = 1;
+  private static final long REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+  private static final long FULL_SYNC_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+  private static final ConcurrentMap<String, CodingNetIssueStore> ourStores = new ConcurrentHashMap<String, CodingNetIssueStore>();
+
+  private static final Gson ourGson = new GsonBuilder()
+    .registerTypeAdapter(Date.class, new EpochDateAdapter())
+    .create();
+
+  @NotNull private final String myRepoAuthor;
+  @NotNull private final String myRepoName;
+  @NotNull private final File myFile;
+
+  private final AtomicBoolean myRefreshing = new AtomicBoolean();
+  // guards publishing; held only for in-memory work, never while talking to the server or the disk
+  private final Object myPublishLock = new Object();
+  // readers never take the locks below: the one-time load is guarded by its own lock, writes to disk by another
+  private final Object myLoadLock = new Object();
+  private final Object mySaveLock = new Object();
+  private final CodingNetIssueIndex myIndex = new CodingNetIssueIndex();
+  private volatile boolean myLoaded;
+  // bumped on every publish, so a slow save never overwrites a newer one
+  private long myGeneration;
+  private long mySavedGeneration;
+
+  // sorted by updated_at, newest first; replaced as a whole on every change
+  @NotNull private volatile List<CodingNetIssue> mySnapshot = Collections.emptyList();
+  @NotNull private volatile Map<Long, CodingNetIssue> myByNumber = Collections.emptyMap();
+  private volatile long myLastSync;
+  private volatile long myLastFullSync;
+
+  private CodingNetIssueStore(@NotNull CodingNetAuthData auth, @NotNull String repoAuthor, @NotNull String repoName) {
+    myRepoAuthor = repoAuthor;
+    myRepoName = repoName;
+    String fileName = FileUtil.sanitizeFileName(auth.getHost() + "_" + auth.getAccount() + "_" + repoAuthor + "_" + repoName) + ".json";
+    myFile = new File(new File(PathManager.getSystemPath(), "coding-net" + File.separator + "issues"), fileName);
+  }
+
+  /**
+   * Stores are per account: accounts may see different (private) issues of the same repository
+   */
+  @NotNull
+  public static CodingNetIssueStore getInstance(@NotNull CodingNetAuthData auth, @NotNull String repoAuthor, @NotNull String repoName) {
+    String key = StringUtil.toLowerCase(auth.getHost() + "/" + auth.getAccount() + "/" + repoAuthor + "/" + repoName);
+    CodingNetIssueStore store = ourStores.get(key);
+    if (store == null) {
+      store = new CodingNetIssueStore(auth, repoAuthor, repoName);
+      CodingNetIssueStore existing = ourStores.putIfAbsent(key, store);
+      if (existing != null) {
+        store = existing;
+      }
+    }
+    store.ensureLoaded();
+    return store;
+  }
+
+  /**
+   * @return true once the store has been fully synced at least once, i.e. it can answer queries on its own
+   */
+  public boolean isReady() {
+    return myLastFullSync > 0;
+  }
+
+  @NotNull
+  public List<CodingNetIssue> getIssues() {
+    return mySnapshot;
+  }
+
+  @Nullable
+  public CodingNetIssue getIssue(long number) {
+    return myByNumber.get(number);
+  }
+
+  /**
+   * Issues matching the filter, newest first
+   */
+  @NotNull
+  public List<CodingNetIssue> getIssues(@Nullable String assigned, boolean withClosed, int offset, int limit) {
+    return filter(null, assigned, withClosed, offset, limit);
+  }
+
+  /**
+   * Full-text search over titles, bodies and the comments fetched so far, newest first
+   */
+  @NotNull
+  public List<CodingNetIssue> search(@NotNull String query, @Nullable String assigned, boolean withClosed, int offset, int limit) {
+    Set<Long> matches = myIndex.search(query);
+    if (matches == null) {
+      return getIssues(assigned, withClosed, offset, limit);
+    }
+    return filter(matches, assigned, withClosed, offset, limit);
+  }
+
+  /**
+   * Apply an issue changed by the plugin right away, without waiting for a sync. Saved to disk with the next sync.
+   */
+  public void update(@NotNull CodingNetIssue issue) {
+    synchronized (myPublishLock) {
+      Map<Long, CodingNetIssue> byNumber = new HashMap<Long, CodingNetIssue>(myByNumber);
+      byNumber.put(issue.getNumber(), issue);
+      publish(byNumber);
+      myIndex.update(Collections.singletonList(issue));
+    }
+  }
+
+  /**
+   * Comment tokens are kept across full syncs and saved to disk with the next sync
+   */
+  public void indexComments(long number, @NotNull Collection<String> comments) {
+    myIndex.updateComments(number, comments);
+  }
+
+  @NotNull
+  private List<CodingNetIssue> filter(@Nullable Set<Long> numbers, @Nullable String assigned, boolean withClosed, int offset, int limit) {
+    List<CodingNetIssue> result = new ArrayList<CodingNetIssue>(Math.max(0, Math.min(limit, 100)));
+    if (numbers != null && numbers.isEmpty()) return result;
+
+    int skipped = 0;
+    for (CodingNetIssue issue : mySnapshot) {
+      if (result.size() >= limit) break;
+      if (numbers != null && !numbers.contains(issue.getNumber())) continue;
+      if (!withClosed && !"open".equals(issue.getState())) continue;
+      if (!StringUtil.isEmptyOrSpaces(assigned) &&
+          (issue.getAssignee() == null || !StringUtil.equalsIgnoreCase(assigned, issue.getAssignee().getLogin()))) {
+        continue;
+      }
+      if (skipped++ < offset) continue;
+      result.add(issue);
+    }
+    return result;
+  }
+
+  /**
+   * Schedule a sync on a pooled thread unless one is running or the store has been synced recently
+   */
+  public void refreshInBackground(@NotNull final CodingNetAuthData auth) {
+    if (System.currentTimeMillis() - myLastSync < REFRESH_INTERVAL) return;
+    if (!myRefreshing.compareAndSet(false, true)) return;
+
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      try {
+        CodingNetConnection connection = new CodingNetConnection(auth);
+        connection.setBackground(true);
+        sync(connection);
+      }
+      catch (CodingNetOperationCanceledException ignore) {
+      }
+      catch (IOException e) {
+        LOG.info("Can't refresh issues of " + myRepoAuthor + "/" + myRepoName, e);
+      }
+      finally {
+        myRefreshing.set(false);
+      }
+    });
+  }
+
+  /**
+   * Bring the store up to date with the server, incrementally when possible. Pages are downloaded without holding any
+   * lock, readers keep being served from the previous snapshot until the result is published.
+   */
+  public void sync(@NotNull CodingNetConnection connection) throws IOException {
+    long now = System.currentTimeMillis();
+    boolean full = now - myLastFullSync > FULL_SYNC_INTERVAL;
+    // the server compares whole seconds, so issues updated within the second of the newest known one are kept too
+    Date since = full || mySnapshot.isEmpty() ? null : new Date(mySnapshot.get(0).getUpdatedAt().getTime() / 1000 * 1000);
+
+    Map<Long, CodingNetIssue> updated = new LinkedHashMap<Long, CodingNetIssue>();
+    try {
+      Iterator<CodingNetIssue> iterator =
+        CodingNetApiUtil.streamIssuesUpdatedSince(connection, myRepoAuthor, myRepoName, since).iterator();
+      while (iterator.hasNext()) {
+        CodingNetIssue issue = iterator.next();
+        // the order of the results is not relied upon; skip whatever the server returns in spite of since
+        if (since != null && issue.getUpdatedAt().before(since)) continue;
+        updated.put(issue.getNumber(), issue);
+      }
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    StoreState state;
+    synchronized (myPublishLock) {
+      Map<Long, CodingNetIssue> current = myByNumber;
+      Map<Long, CodingNetIssue> byNumber = full ? new HashMap<Long, CodingNetIssue>() : new HashMap<Long, CodingNetIssue>(current);
+      List<CodingNetIssue> changed = new ArrayList<CodingNetIssue>(updated.size());
+      for (CodingNetIssue issue : updated.values()) {
+        // an issue passed to update() while the pages were downloading may be newer than what the server returned
+        CodingNetIssue known = current.get(issue.getNumber());
+        CodingNetIssue newest = known != null && known.getUpdatedAt().after(issue.getUpdatedAt()) ? known : issue;
+        byNumber.put(newest.getNumber(), newest);
+        changed.add(newest);
+      }
+      publish(byNumber);
+      if (full) {
+        myIndex.reset(byNumber.values());
+      }
+      else {
+        myIndex.update(changed);
+      }
+      myLastSync = now;
+      if (full) {
+        myLastFullSync = now;
+      }
+      state = createState();
+    }
+    save(state);
+  }
+
+  /**
+   * Drop all local data, e.g. after the repository settings changed
+   */
+  public void clear() {
+    long generation;
+    synchronized (myPublishLock) {
+      publish(new HashMap<Long, CodingNetIssue>());
+      myIndex.reset(Collections.<CodingNetIssue>emptyList());
+      myLastSync = 0;
+      myLastFullSync = 0;
+      generation = myGeneration;
+    }
+    synchronized (mySaveLock) {
+      mySavedGeneration = Math.max(mySavedGeneration, generation);
+      FileUtil.delete(myFile);
+    }
+  }
+
+  private void publish(@NotNull Map<Long, CodingNetIssue> byNumber) {
+    List<CodingNetIssue> snapshot = new ArrayList<CodingNetIssue>(byNumber.values());
+    Collections.sort(snapshot, (i1, i2) -> {
+      int result = i2.getUpdatedAt().compareTo(i1.getUpdatedAt());
+      return result != 0 ? result : Long.compare(i2.getNumber(), i1.getNumber());
+    });
+    myByNumber = Collections.unmodifiableMap(byNumber);
+    mySnapshot = Collections.unmodifiableList(snapshot);
+    myGeneration++;
+  }
+
+  private void ensureLoaded() {
+    if (myLoaded) return;
+    synchronized (myLoadLock) {
+      if (myLoaded) return;
+      load();
+      myLoaded = true;
+    }
+  }
+
+  private void load() {
+    if (!myFile.exists()) return;
+
+    try {
+      StoreState state = ourGson.fromJson(FileUtil.loadFile(myFile), StoreState.class);
+      if (state == null || state.version != FORMAT_VERSION || state.issues == null) {
+        FileUtil.delete(myFile);
+        return;
+      }
+      Map<Long, CodingNetIssue> byNumber = new HashMap<Long, CodingNetIssue>();
+      for (CodingNetIssue issue : state.issues) {
+        byNumber.put(issue.getNumber(), issue);
+      }
+      synchronized (myPublishLock) {
+        publish(byNumber);
+        myIndex.reset(byNumber.values());
+        if (state.comments != null) {
+          myIndex.restoreComments(state.comments);
+        }
+        myLastFullSync = state.lastFullSync;
+        mySavedGeneration = myGeneration;
+      }
+    }
+    catch (IOException | JsonParseException e) {
+      LOG.info("Can't load issue store " + myFile, e);
+      FileUtil.delete(myFile);
+    }
+  }
+
+  /**
+   * Must be called under {@link #myPublishLock}, so the issues, the comment tokens and the generation match
+   */
+  @NotNull
+  private StoreState createState() {
+    StoreState state = new StoreState();
+    state.version = FORMAT_VERSION;
+    state.lastFullSync = myLastFullSync;
+    state.issues = mySnapshot;
+    state.comments = myIndex.getCommentTokens();
+    state.generation = myGeneration;
+    return state;
+  }
+
+  private void save(@NotNull StoreState state) {
+    synchronized (mySaveLock) {
+      if (state.generation <= mySavedGeneration) return;
+      write(state);
+      mySavedGeneration = state.generation;
+    }
+  }
+
+  private void write(@NotNull StoreState state) {
+    // write next to the target and rename, so a crash never leaves a truncated store behind
+    File temp = new File(myFile.getPath() + ".tmp");
+    try {
+      FileUtil.createParentDirs(temp);
+      Writer writer = new OutputStreamWriter(new FileOutputStream(temp), CharsetToolkit.UTF8_CHARSET);
+      try {
+        ourGson.toJson(state, writer);
+      }
+      finally {
+        writer.close();
+      }
+      if (!temp.renameTo(myFile)) {
+        FileUtil.delete(myFile);
+        if (!temp.renameTo(myFile)) {
+          LOG.info("Can't save issue store " + myFile);
+        }
+      }
+    }
+    catch (IOException | JsonIOException e) {
+      LOG.info("Can't save issue store " + myFile, e);
+      FileUtil.delete(temp);
+    }
+  }
+
+  private static class StoreState {
+    int version;
+    long lastFullSync;
+    List<CodingNetIssue> issues;
+    // issue number -> tokens of its comments; comments themselves are not stored
+    Map<Long, Set<String>> comments;
+    transient long generation;
+  }
+
+  private static class EpochDateAdapter implements JsonSerializer<Date>, JsonDeserializer<Date> {
+    @Override
+    public JsonElement serialize(Date src, Type typeOfSrc, JsonSerializationContext context) {
+      return new JsonPrimitive(src.getTime());
+    }
+
+    @Override
+    public Date deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+      return new Date(json.getAsLong());
+    }
+  }
+}
@@ -41,6 +41,9 @@ import org.coding.git.util.CodingNetUtil;
 import javax.swing.*;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -56,6 +59,7 @@ public class CodingNetRepository extends BaseRepositoryImpl {
   @NotNull private String myUser = "";
   @NotNull private String myToken = "";
   private boolean myAssignedIssuesOnly = false;
+  private final IssuePageCache myIssuePageCache = new IssuePageCache();
 
   @SuppressWarnings({"UnusedDeclaration"})
   public CodingNetRepository() {
@@ -78,7 +82,7 @@ public class CodingNetRepository extends BaseRepositoryImpl {
   @Override
   public CancellableConnection createCancellableConnection() {
     return new CancellableConnection() {
-      private final CodingNetConnection myConnection = new CodingNetConnection(getAuthData(), false);
+      private final CodingNetConnection myConnection = new CodingNetConnection(getAuthData());
 
       @Override
       protected void doTest() throws Exception {
@@ -115,11 +119,11 @@ public class CodingNetRepository extends BaseRepositoryImpl {
   @Override
   public Task[] getIssues(@Nullable String query, int offset, int limit, boolean withClosed) throws Exception {
     try {
-      return getIssues(query, offset + limit, withClosed);
+      return doGetIssues(query, offset, limit, withClosed);
+    }
+    catch (CodingNetRateLimitExceededException e) {
+      return new Task[0];
     }
-//    catch (GithubRateLimitExceededException e) {
-//      return new Task[0];
-//    }
     catch (CodingNetAuthenticationException e) {
       throw new Exception(e.getMessage(), e); // Wrap to show error message
     }
@@ -138,7 +142,7 @@ public class CodingNetRepository extends BaseRepositoryImpl {
   }
 
   @NotNull
-  private Task[] getIssues(@Nullable String query, int max, boolean withClosed) throws Exception {
+  private Task[] doGetIssues(@Nullable String query, int offset, int limit, boolean withClosed) throws Exception {
     CodingNetConnection connection = getConnection();
 
     try {
@@ -151,12 +155,24 @@ public class CodingNetRepository extends BaseRepositoryImpl {
       }
 
       List<CodingNetIssue> issues;
-      if (StringUtil.isEmptyOrSpaces(query)) {
+      CodingNetIssueStore store = getIssueStore();
+      if (store.isReady()) {
+        // served from the local copy and its index, the server is reconciled in background
+        store.refreshInBackground(getAuthData());
+        issues = StringUtil.isEmptyOrSpaces(query)
+                 ? store.getIssues(assigned, withClosed, offset, limit)
+                 : store.search(query, assigned, withClosed, offset, limit);
+      }
+      else if (StringUtil.isEmptyOrSpaces(query)) {
         // search queries have way smaller request number limit
+        store.refreshInBackground(getAuthData());
+        // only pages covering [offset, offset + limit) are requested, pages seen in this session are reused
+        Map<Integer, List<CodingNetIssue>> pages = myIssuePageCache.getPages(assigned + ":" + withClosed);
         issues =
-          CodingNetApiUtil.getIssuesAssigned(connection, getRepoAuthor(), getRepoName(), assigned, max, withClosed);
+          CodingNetApiUtil.getIssuesAssigned(connection, getRepoAuthor(), getRepoName(), assigned, offset, limit, withClosed, pages);
       }
       else {
+        store.refreshInBackground(getAuthData());
         issues =
           CodingNetApiUtil.getIssuesQueried(connection, getRepoAuthor(), getRepoName(), assigned, query, withClosed);
       }
@@ -252,8 +268,10 @@ public class CodingNetRepository extends BaseRepositoryImpl {
 
   private Comment[] fetchComments(final long id) throws Exception {
     CodingNetConnection connection = getConnection();
+    connection.setBackground(true);
     try {
       List<CodingNetIssueComment> result = CodingNetApiUtil.getIssueComments(connection, getRepoAuthor(), getRepoName(), id);
+      getIssueStore().indexComments(id, ContainerUtil.map(result, comment -> comment.getBodyHtml()));
 
       return ContainerUtil.map2Array(result, Comment.class, comment -> new CodingNetComment(comment.getCreatedAt(),
                                                                                          comment.getUser().getLogin(),
@@ -280,6 +298,19 @@ public class CodingNetRepository extends BaseRepositoryImpl {
       return null;
     }
     final String numericId = id.substring(index + 1);
+    CodingNetIssueStore store = getIssueStore();
+    if (store.isReady()) {
+      try {
+        CodingNetIssue issue = store.getIssue(Long.parseLong(numericId));
+        if (issue != null) {
+          store.refreshInBackground(getAuthData());
+          return createTask(issue);
+        }
+      }
+      catch (NumberFormatException ignore) {
+      }
+    }
+
     CodingNetConnection connection = getConnection();
     try {
       return createTask(CodingNetApiUtil.getIssue(connection, getRepoAuthor(), getRepoName(), numericId));
@@ -310,7 +341,13 @@ public class CodingNetRepository extends BaseRepositoryImpl {
         default:
           throw new IllegalStateException("Unknown state: " + state);
       }
-      CodingNetApiUtil.setIssueState(connection, getRepoAuthor(), getRepoName(), task.getNumber(), isOpen);
+      CodingNetIssue issue = CodingNetApiUtil.setIssueState(connection, getRepoAuthor(), getRepoName(), task.getNumber(), isOpen);
+      myIssuePageCache.clear();
+      CodingNetIssueStore store = getIssueStore();
+      if (store.isReady()) {
+        // never wait for a running sync here, it may take minutes
+        store.update(issue);
+      }
     }
     finally {
       connection.close();
@@ -388,8 +425,13 @@ public class CodingNetRepository extends BaseRepositoryImpl {
     return CodingNetAuthData.createTokenAuth(getUrl(), getToken(), isUseProxy());
   }
 
+  @NotNull
+  private CodingNetIssueStore getIssueStore() {
+    return CodingNetIssueStore.getInstance(getAuthData(), getRepoAuthor(), getRepoName());
+  }
+
   private CodingNetConnection getConnection() {
-    return new CodingNetConnection(getAuthData(), true);
+    return new CodingNetConnection(getAuthData());
   }
 
   @Override
@@ -416,4 +458,30 @@ public class CodingNetRepository extends BaseRepositoryImpl {
   protected int getFeatures() {
     return super.getFeatures() | STATE_UPDATING;
   }
+
+  /**
+   * Issue pages fetched during the current session; dropped when they expire or the filter changes
+   */
+  private static class IssuePageCache {
+    private static final long TTL = TimeUnit.MINUTES.toMillis(2);
+
+    @Nullable private String myKey;
+    private long myCreated;
+    @Nullable private Map<Integer, List<CodingNetIssue>> myPages;
+
+    @NotNull
+    synchronized Map<Integer, List<CodingNetIssue>> getPages(@NotNull String key) {
+      long now = System.currentTimeMillis();
+      if (myPages == null || !key.equals(myKey) || now - myCreated > TTL) {
+        myKey = key;
+        myCreated = now;
+        myPages = new ConcurrentHashMap<Integer, List<CodingNetIssue>>();
+      }
+      return myPages;
+    }
+
+    synchronized void clear() {
+      myPages = null;
+    }
+  }
 }
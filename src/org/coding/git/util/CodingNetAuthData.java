@@ -17,6 +17,7 @@ package org.coding.git.util;
 
 import com.intellij.openapi.util.text.StringUtil;
 import org.coding.git.api.CodingNetApiUtil;
+import org.coding.git.security.CodingNetSecurityUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -28,6 +29,9 @@ import java.util.UUID;
 public class CodingNetAuthData {
     public enum AuthType {BASIC, TOKEN, ANONYMOUS}
 
+    //--只用于内存中的身份标识, 不持久化
+    private static final String ourIdentitySalt = UUID.randomUUID().toString();
+
     @NotNull
     private final AuthType myAuthType;
     @NotNull
@@ -115,6 +119,39 @@ public class CodingNetAuthData {
         return myUseProxy;
     }
 
+    /**
+     * 账号标识, 用于本地缓存、请求额度等按账号区分且应在修改密码后保留的场景, 不包含明文凭证
+     *
+     * @return
+     */
+    @NotNull
+    public String getAccount() {
+        switch (myAuthType) {
+            case BASIC:
+                assert myBasicAuth != null;
+                return "basic:" + StringUtil.toLowerCase(myBasicAuth.getLogin());
+            case TOKEN:
+                assert myTokenAuth != null;
+                return "token:" + CodingNetSecurityUtil.getUserPasswordOfSHA1(myTokenAuth.getToken());
+            default:
+                return "anonymous";
+        }
+    }
+
+    /**
+     * 认证身份标识, 用于共享连接、已验证会话等必须与凭证一致的场景, 不包含明文凭证;
+     * 密码变化后得到不同的标识, 不会沿用旧密码建立的会话. sid不计入: 每次创建认证信息都会生成新的sid, 会话以服务端下发的为准
+     *
+     * @return
+     */
+    @NotNull
+    public String getIdentity() {
+        if (myAuthType != AuthType.BASIC) return getAccount();
+        assert myBasicAuth != null;
+        //--登录时发送的就是密码的SHA1, 这里加入进程内随机盐, 标识出现在日志中也不泄露凭证
+        return getAccount() + ":" + CodingNetSecurityUtil.getUserPasswordOfSHA1(ourIdentitySalt + myBasicAuth.getPassword());
+    }
+
     @NotNull
     public CodingNetAuthData copyWithTwoFactorCode(@NotNull String code) {
         if (myBasicAuth == null) {
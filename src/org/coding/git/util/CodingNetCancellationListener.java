@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Coding
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.coding.git.util;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.util.AbstractProgressIndicatorExBase;
+import com.intellij.openapi.wm.ex.ProgressIndicatorEx;
+import org.coding.git.api.CodingNetConnection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进度条取消监听, 用户点击取消的同一时刻执行回调, 不做定时轮询
+ * <p>
+ * 委托无法从{@link ProgressIndicatorEx}上移除, 所以每个指示器只注册一个委托, 由它分发给当前登记的回调;
+ * 回调在操作结束时通过{@link #dispose()}移除, 复用的指示器不会积累委托. 指示器不支持委托时不做任何事,
+ * 由{@link CodingNetConnection#setProgressIndicator}在请求边界检查.
+ *
+ * @author robin
+ */
+final class CodingNetCancellationListener {
+    //--弱引用指示器, 值不引用指示器本身
+    private static final Map<ProgressIndicator, Dispatcher> ourDispatchers = new WeakHashMap<ProgressIndicator, Dispatcher>();
+
+    @Nullable
+    private Runnable myAction;
+    @Nullable
+    private Dispatcher myDispatcher;
+
+    private CodingNetCancellationListener(@NotNull Runnable action) {
+        myAction = action;
+    }
+
+    /**
+     * 取消时立即中止连接上正在进行的请求; 指示器同时交给连接, 不支持委托时在请求边界检查
+     *
+     * @param indicator
+     * @param connection
+     * @return 操作结束后需要调用{@link #dispose()}
+     */
+    @NotNull
+    static CodingNetCancellationListener install(@NotNull ProgressIndicator indicator, @NotNull CodingNetConnection connection) {
+        connection.setProgressIndicator(indicator);
+        return install(indicator, connection::abort);
+    }
+
+    /**
+     * @param indicator
+     * @param onCancel  最多执行一次, 可能在任意线程中执行
+     * @return 操作结束后需要调用{@link #dispose()}, 之后不会再执行回调
+     */
+    @NotNull
+    static CodingNetCancellationListener install(@NotNull ProgressIndicator indicator, @NotNull Runnable onCancel) {
+        CodingNetCancellationListener listener = new CodingNetCancellationListener(onCancel);
+        if (indicator instanceof ProgressIndicatorEx) {
+            Dispatcher dispatcher;
+            synchronized (ourDispatchers) {
+                dispatcher = ourDispatchers.get(indicator);
+                if (dispatcher == null) {
+                    dispatcher = new Dispatcher();
+                    ourDispatchers.put(indicator, dispatcher);
+                    ((ProgressIndicatorEx) indicator).addStateDelegate(dispatcher);
+                }
+            }
+            listener.myDispatcher = dispatcher;
+            dispatcher.myListeners.add(listener);
+        }
+        //--注册之前已经取消的情况
+        if (indicator.isCanceled()) {
+            listener.fire();
+        }
+        return listener;
+    }
+
+    /**
+     * 从指示器上移除回调; 正在执行的回调结束后才返回
+     */
+    synchronized void dispose() {
+        myAction = null;
+        if (myDispatcher != null) {
+            myDispatcher.myListeners.remove(this);
+            myDispatcher = null;
+        }
+    }
+
+    private synchronized void fire() {
+        Runnable action = myAction;
+        myAction = null;
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    /**
+     * 每个指示器唯一的委托
+     */
+    private static final class Dispatcher extends AbstractProgressIndicatorExBase {
+        private final Set<CodingNetCancellationListener> myListeners = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void cancel() {
+            super.cancel();
+            for (CodingNetCancellationListener listener : new ArrayList<CodingNetCancellationListener>(myListeners)) {
+                listener.fire();
+            }
+        }
+    }
+}
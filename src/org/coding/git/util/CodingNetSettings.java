@@ -38,6 +38,8 @@ import static org.coding.git.util.CodingNetAuthData.AuthType;
  */
 @State(name = "CodingSettings", storages = @Storage("coding_settings.xml"))
 public class CodingNetSettings implements PersistentStateComponent<CodingNetSettings.State> {
+  public static final int DEFAULT_CONNECTION_TIMEOUT = 5000;
+
   private static final Logger LOG = CodingNetUtil.LOG;
   private static final String CODINGNET_SETTINGS_PASSWORD_KEY = "CODINGNET_SETTINGS_PASSWORD_KEY";
 
@@ -59,7 +61,7 @@ public class CodingNetSettings implements PersistentStateComponent<CodingNetSett
     public boolean OPEN_IN_BROWSER_GIST = true;
     public boolean PRIVATE_GIST = true;
     public boolean SAVE_PASSWORD = true;
-    public int CONNECTION_TIMEOUT = 5000;
+    public int CONNECTION_TIMEOUT = DEFAULT_CONNECTION_TIMEOUT;
     public boolean VALID_GIT_AUTH = true;
     public ThreeState CREATE_PULL_REQUEST_CREATE_REMOTE = ThreeState.UNSURE;
     public boolean CLONE_GIT_USING_SSH = false;
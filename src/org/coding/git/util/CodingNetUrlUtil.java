@@ -21,10 +21,13 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.coding.git.api.CodingNetFullPath;
 
+import java.util.regex.Pattern;
+
 /**
  * @author robin
  */
 public class CodingNetUrlUtil {
+  private static final Pattern LOOPBACK_IPV4 = Pattern.compile("127(\\.\\d{1,3}){3}");
 
   /**
    * 去除协议前缀
@@ -103,18 +106,61 @@ public class CodingNetUrlUtil {
   /**
    * 根据Coding openAPI请求域名为https://coding.net
    * 如获取用户下项目列表为:https://coding.net/api/user/projects
+   * 本机地址(可带端口)同样有效, 用于离线测试时指向本地的OpenAPI模拟服务, 如http://127.0.0.1:8080
    * @param urlFromSettings
    * @return
    */
   @NotNull
   public static String getCodingOpenApiUrlDomainNameWithoutProtocol(@NotNull String urlFromSettings) {
     String url = removeTrailingSlash(removeProtocolPrefix(urlFromSettings.toLowerCase()));
-    if (url.equals(CodingNetApiUtil.DEFAULT_CODING_HOST)) {
+    if (url.equals(CodingNetApiUtil.DEFAULT_CODING_HOST) || isLoopbackHost(url)) {
       return  url;
     }
     return null;
   }
 
+  /**
+   * @param hostAndPort localhost、127.x.x.x或[::1], 可带端口
+   * @return
+   */
+  public static boolean isLoopbackHost(@NotNull String hostAndPort) {
+    String host = hostAndPort;
+    String port = null;
+    if (host.startsWith("[")) {
+      int end = host.indexOf(']');
+      if (end == -1) return false;
+      if (end + 1 < host.length()) {
+        if (host.charAt(end + 1) != ':') return false;
+        port = host.substring(end + 2);
+      }
+      host = host.substring(1, end);
+    }
+    else {
+      int colon = host.indexOf(':');
+      if (colon != -1) {
+        port = host.substring(colon + 1);
+        host = host.substring(0, colon);
+      }
+    }
+    if (port != null && !isPort(port)) {
+      return false;
+    }
+    return host.equals("localhost") || host.equals("::1") || LOOPBACK_IPV4.matcher(host).matches();
+  }
+
+  private static boolean isPort(@NotNull String port) {
+    if (port.isEmpty() || port.length() > 5) {
+      return false;
+    }
+    for (int i = 0; i < port.length(); i++) {
+      if (!Character.isDigit(port.charAt(i))) {
+        return false;
+      }
+    }
+    int value = Integer.parseInt(port);
+    return value > 0 && value <= 65535;
+  }
+
   public static boolean isCodingNetUrl(@NotNull String url) {
     return isCodingNetUrl(url, CodingNetSettings.getInstance().getHost());
   }
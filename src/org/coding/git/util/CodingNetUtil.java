@@ -15,7 +15,6 @@
  */
 package org.coding.git.util;
 
-import com.intellij.concurrency.JobScheduler;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
@@ -44,6 +43,7 @@ import git4idea.repo.GitRepository;
 import git4idea.repo.GitRepositoryManager;
 import org.coding.git.api.CodingNetApiUtil;
 import org.coding.git.api.CodingNetConnection;
+import org.coding.git.api.CodingNetSessionCache;
 import org.coding.git.api.CodingNetUserDetailed;
 import org.coding.git.exceptions.CodingNetTwoFactorAuthenticationException;
 import org.coding.git.ui.CodingNetBasicLoginDialog;
@@ -58,8 +58,6 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.util.List;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -84,33 +82,65 @@ public class CodingNetUtil {
                                 @NotNull CodingNetAuthDataHolder authHolder,
                                 @NotNull final ProgressIndicator indicator,
                                 @NotNull ThrowableConvertor<CodingNetConnection, T, IOException> task) throws IOException {
+        return runTask(project, authHolder, indicator, task, false);
+    }
+
+    /**
+     * @param forceLogin 不复用已验证的会话, 先重新登录
+     */
+    private static <T> T runTask(@NotNull Project project,
+                                 @NotNull CodingNetAuthDataHolder authHolder,
+                                 @NotNull final ProgressIndicator indicator,
+                                 @NotNull ThrowableConvertor<CodingNetConnection, T, IOException> task,
+                                 boolean forceLogin) throws IOException {
         //--根据设置选项设置
         CodingNetAuthData auth = authHolder.getAuthData();
+        //--会话已验证过时跳过登录探测, 直接复用共享连接中的会话
+        boolean sessionReused = !forceLogin && CodingNetSessionCache.isValidated(auth);
+        //--网络连接器
+        final CodingNetConnection connection = new CodingNetConnection(auth);
         try {
-            //--网络连接器
-            final CodingNetConnection connection = new CodingNetConnection(auth, true);
-            ScheduledFuture<?> future = null;
-
             try {
-                //--直接尝试获取用户信息
-                CodingNetAuthData.BasicAuth basicAuth = auth.getBasicAuth();
-                //if (basicAuth.getAuthCode() == null)
-                    CodingNetApiUtil.getCurrentUserDetailed(connection, auth);
+                if (!sessionReused) {
+                    //--登录探测本身是POST, 放在单独的连接上, 不算作任务对远端数据的修改
+                    CodingNetConnection probe = new CodingNetConnection(auth);
+                    CodingNetCancellationListener listener = CodingNetCancellationListener.install(indicator, probe);
+                    try {
+                        CodingNetApiUtil.getCurrentUserDetailed(probe, auth);
+                    } finally {
+                        listener.dispose();
+                        probe.close();
+                    }
+                    CodingNetSessionCache.markValidated(auth);
+                }
 
-                future = addCancellationListener(indicator, connection);
-                return task.convert(connection);
+                CodingNetCancellationListener listener = CodingNetCancellationListener.install(indicator, connection);
+                try {
+                    return task.convert(connection);
+                } finally {
+                    listener.dispose();
+                }
             } finally {
                 connection.close();
-                if (future != null) future.cancel(true);
             }
         }
         //--捕获2步认证,根据异常进行跳转
         catch (CodingNetTwoFactorAuthenticationException e) {
+            //--已经修改过远端数据的任务不能重放, 否则会重复创建或提交
+            if (connection.isRemoteModified()) throw e;
+            if (sessionReused && e.isSessionExpired()) {
+                //--复用的会话已失效, 重新登录一次再决定是否需要用户介入
+                return runTask(project, authHolder, indicator, task, true);
+            }
             getTwoFactorAuthData(project, authHolder, indicator, auth);
             return runTask(project, authHolder, indicator, task);
         }
         //--登陆认证失败,根据异常进行跳转
         catch (CodingNetAuthenticationException e) {
+            if (connection.isRemoteModified()) throw e;
+            if (sessionReused && e.isSessionExpired()) {
+                return runTask(project, authHolder, indicator, task, true);
+            }
             getValidAuthData(project, authHolder, indicator, auth);
             return runTask(project, authHolder, indicator, task);
         }
@@ -127,15 +157,13 @@ public class CodingNetUtil {
                 throw new CodingNetAuthenticationException("Expected basic authentication");
             }
 
-            final CodingNetConnection connection = new CodingNetConnection(auth, true);
-            ScheduledFuture<?> future = null;
-
+            final CodingNetConnection connection = new CodingNetConnection(auth);
+            CodingNetCancellationListener listener = CodingNetCancellationListener.install(indicator, connection);
             try {
-                future = addCancellationListener(indicator, connection);
                 return task.convert(connection);
             } finally {
+                listener.dispose();
                 connection.close();
-                if (future != null) future.cancel(true);
             }
         } catch (CodingNetTwoFactorAuthenticationException e) {
             getTwoFactorAuthData(project, authHolder, indicator, auth);
@@ -161,15 +189,13 @@ public class CodingNetUtil {
                                                         @NotNull final ProgressIndicator indicator) throws IOException {
         CodingNetAuthData auth = authHolder.getAuthData();
         try {
-            final CodingNetConnection connection = new CodingNetConnection(auth, true);
-            ScheduledFuture<?> future = null;
-
+            final CodingNetConnection connection = new CodingNetConnection(auth);
+            CodingNetCancellationListener listener = CodingNetCancellationListener.install(indicator, connection);
             try {
-                future = addCancellationListener(indicator, connection);
                 return CodingNetApiUtil.getCurrentUserDetailed(connection, auth);
             } finally {
+                listener.dispose();
                 connection.close();
-                if (future != null) future.cancel(true);
             }
         } catch (CodingNetTwoFactorAuthenticationException e) {
             //--如果需要2步认证,直接返回
@@ -179,27 +205,6 @@ public class CodingNetUtil {
         }
     }
 
-    @NotNull
-    private static ScheduledFuture<?> addCancellationListener(@NotNull Runnable run) {
-        return JobScheduler.getScheduler().scheduleWithFixedDelay(run, 1000, 300, TimeUnit.MILLISECONDS);
-    }
-
-    @NotNull
-    private static ScheduledFuture<?> addCancellationListener(@NotNull final ProgressIndicator indicator,
-                                                              @NotNull final CodingNetConnection connection) {
-        return addCancellationListener(() -> {
-            if (indicator.isCanceled()) connection.abort();
-        });
-    }
-
-    @NotNull
-    private static ScheduledFuture<?> addCancellationListener(@NotNull final ProgressIndicator indicator,
-                                                              @NotNull final Thread thread) {
-        return addCancellationListener(() -> {
-            if (indicator.isCanceled()) thread.interrupt();
-        });
-    }
-
     public static void getValidAuthData(@NotNull final Project project,
                                         @NotNull final CodingNetAuthDataHolder authHolder,
                                         @NotNull final ProgressIndicator indicator,
@@ -377,14 +382,12 @@ public class CodingNetUtil {
 
     public static <T> T runInterruptable(@NotNull final ProgressIndicator indicator,
                                          @NotNull ThrowableComputable<T, IOException> task) throws IOException {
-        ScheduledFuture<?> future = null;
+        final Thread thread = Thread.currentThread();
+        CodingNetCancellationListener listener = CodingNetCancellationListener.install(indicator, thread::interrupt);
         try {
-            final Thread thread = Thread.currentThread();
-            future = addCancellationListener(indicator, thread);
-
             return task.compute();
         } finally {
-            if (future != null) future.cancel(true);
+            listener.dispose();
             Thread.interrupted();
         }
     }